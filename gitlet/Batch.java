@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** Runs many commands, one to a line of a file or of the standard input,
+ *  in one JVM.  A line is split into arguments as a shell would split it:
+ *  at blanks, except within single or double quotes, and with a backslash
+ *  quoting the character after it.  Blank lines and lines starting with
+ *  '#' are skipped.  Each command prints what it would have printed on
+ *  its own, including its error message if it fails, and the batch goes
+ *  on; failures are also reported, with their line numbers, on the
+ *  standard error.  Decoded commits and blobs, the refs and the staging
+ *  area are read once and shared by all the commands.  The staging area
+ *  is written once for each run of adds and removals rather than after
+ *  each of them, and packing is done once, at the end, rather than after
+ *  each commit.
+ */
+class Batch {
+
+    /** Runs the commands in FILE, or on the standard input if FILE is
+     *  null, on REPO, printing their results on OUT. */
+    static void run(Repository repo, PrintStream out, File file)
+        throws IOException {
+        Reader source;
+        if (file == null) {
+            source = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+        } else if (!file.isFile()) {
+            throw error("File does not exist.");
+        } else {
+            source = Files.newBufferedReader(file.toPath(),
+                                             StandardCharsets.UTF_8);
+        }
+        int failed = 0;
+        repo.refresh();
+        repo.beginBatch();
+        try (BufferedReader in = new BufferedReader(source)) {
+            int lineNum = 0;
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                lineNum += 1;
+                String trimmed = line.strip();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    runCommand(repo, out, split(trimmed));
+                } catch (GitletException excp) {
+                    failed += 1;
+                    out.println(excp.getMessage());
+                    System.err.printf("batch: line %d: %s%n", lineNum,
+                                      excp.getMessage());
+                }
+            }
+        } finally {
+            repo.endBatch();
+            out.flush();
+        }
+        if (failed > 0) {
+            System.err.printf("batch: %d command(s) failed.%n", failed);
+        }
+    }
+
+    /** Runs the command ARGS of a batch on REPO, printing its results on
+     *  OUT. */
+    private static void runCommand(Repository repo, PrintStream out,
+                                   String[] args) throws IOException {
+        if (args.length > 0 && NOT_BATCHED.contains(args[0])) {
+            throw error("Cannot run %s in a batch.", args[0]);
+        }
+        repo.deferStage(args.length > 0
+                        && (args[0].equals("add") || args[0].equals("rm")));
+        Main.run(repo, out, args);
+    }
+
+    /** Returns the arguments on LINE. */
+    static String[] split(String line) {
+        ArrayList<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for (int k = 0; k < line.length(); k += 1) {
+            char c = line.charAt(k);
+            if (quote == '\'') {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    arg.append(c);
+                }
+            } else if (c == '\\') {
+                k += 1;
+                if (k == line.length()) {
+                    throw error("Unfinished escape in batch command.");
+                }
+                char next = line.charAt(k);
+                if (quote == '"' && next != '"' && next != '\\') {
+                    arg.append(c);
+                }
+                arg.append(next);
+                inArg = true;
+            } else if (quote == '"') {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    arg.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inArg = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                arg.append(c);
+                inArg = true;
+            }
+        }
+        if (quote != 0) {
+            throw error("Unmatched quote in batch command.");
+        }
+        if (inArg) {
+            args.add(arg.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** The commands that may not be run in a batch. */
+    private static final List<String> NOT_BATCHED =
+        List.of("batch", "daemon");
+}
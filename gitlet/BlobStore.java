@@ -0,0 +1,521 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** The blobs of a repository.  A blob is named by the sha1 of its contents,
+ *  but may be stored either in full or as a line delta against an earlier
+ *  version of the same file: the edit that Diff.diffs() gives from the base
+ *  version's lines to the new lines.  Deltas may be taken against other
+ *  deltas, up to MAX_DEPTH deep.  Blobs rebuilt from deltas are kept in a
+ *  small cache, since merges and checkouts tend to read the same versions
+ *  repeatedly.  Files larger than MAX_DELTA_BYTES are never deltas, and
+ *  are streamed into and out of the store a buffer at a time, so they are
+ *  never wholly in memory.  Those larger than CHUNK_THRESHOLD are further
+ *  cut into chunks at content-defined boundaries, found with a rolling
+ *  hash, and stored as a list of chunk blobs.  An edit to such a file
+ *  changes only the chunks around it, so the unchanged chunks, which are
+ *  stored once however many versions and files share them, need not be
+ *  written again.  Several threads may read and write blobs at once.
+ */
+class BlobStore {
+
+    /** Type byte of a blob stored in full. */
+    static final byte FULL = 'B';
+
+    /** Type byte of a blob stored as a delta. */
+    static final byte DELTA = 'D';
+
+    /** Type byte of a blob stored as a list of chunks. */
+    static final byte CHUNKED = 'L';
+
+    /** Longest chain of deltas needed to rebuild a blob. */
+    static final int MAX_DEPTH = 10;
+
+    /** Bound on the work of computing a delta: the lines of the two
+     *  versions together, times the most lines that may differ between
+     *  them.  Diff takes time proportional to that product, so versions
+     *  too far apart for it are stored in full. */
+    static final long MAX_DELTA_WORK = 1L << 26;
+
+    /** Largest file, in bytes, that is read into memory to try a delta. */
+    static final int MAX_DELTA_BYTES = 1 << 20;
+
+    /** Smallest file, in bytes, that is stored in chunks. */
+    static final long CHUNK_THRESHOLD = 4 << 20;
+
+    /** Smallest chunk, except for the last chunk of a file. */
+    static final int MIN_CHUNK = 16 << 10;
+
+    /** Largest chunk. */
+    static final int MAX_CHUNK = 256 << 10;
+
+    /** A chunk ends where the bits of the rolling hash selected by this
+     *  mask are zero, which makes chunks about 64 KB on average.  Each
+     *  byte is shifted one bit further up the hash, so bit K depends only
+     *  on the last K + 1 bytes; the mask takes the top 16 bits, which
+     *  depend on the last 49 to 64 bytes, rather than the bottom ones,
+     *  which would see only the last 16. */
+    static final long CHUNK_MASK = 0xffffL << 48;
+
+    /** Total size in bytes of the blobs kept in the cache. */
+    static final int CACHE_BYTES = 16 << 20;
+
+    /** A blob store keeping its objects in OBJECTS. */
+    BlobStore(ObjectStore objects) {
+        _objects = objects;
+    }
+
+    /** Saves CONTENTS as a blob, unless it is already stored, and returns
+     *  its sha1.  BASE, if not null, is the sha1 of a likely earlier
+     *  version of the same file, against which CONTENTS is stored as a
+     *  delta if that is sufficiently smaller. */
+    String write(byte[] contents, String base) {
+        String id = sha1(contents);
+        if (_objects.contains(id)) {
+            return id;
+        }
+        byte[] stored = null;
+        if (base != null && !base.equals(id) && _objects.contains(base)) {
+            stored = delta(contents, base);
+        }
+        if (stored == null) {
+            _objects.write(id, new byte[] { FULL, Codec.VERSION }, contents);
+        } else {
+            _objects.write(id, stored);
+        }
+        return id;
+    }
+
+    /** Saves the contents of SOURCE as a blob, as for write(byte[],
+     *  String), and returns its sha1.  Files too large to delta are
+     *  hashed while they are streamed into the store. */
+    String write(File source, String base) {
+        long size = source.length();
+        if (base != null && size <= MAX_DELTA_BYTES) {
+            return write(readContents(source), base);
+        }
+        try (InputStream in = new FileInputStream(source)) {
+            if (size >= CHUNK_THRESHOLD) {
+                return writeChunked(in, size);
+            }
+            return _objects.write(new byte[] { FULL, Codec.VERSION },
+                                  in, size);
+        } catch (IOException excp) {
+            throw error("Could not read %s: %s", source.getName(),
+                        excp.getMessage());
+        }
+    }
+
+    /** Saves the SIZE bytes of IN as a list of chunks, writing only the
+     *  chunks not already stored, and returns the sha1 of the bytes. */
+    private String writeChunked(InputStream in, long size)
+        throws IOException {
+        MessageDigest whole = sha1Digest();
+        ArrayList<String> chunkIds = new ArrayList<>();
+        ArrayList<Integer> chunkSizes = new ArrayList<>();
+        byte[] buf = new byte[ObjectStore.BUFFER_SIZE];
+        byte[] chunk = new byte[MAX_CHUNK];
+        int len = 0;
+        long hash = 0;
+        long total = 0;
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            whole.update(buf, 0, n);
+            total += n;
+            for (int i = 0; i < n; i += 1) {
+                chunk[len] = buf[i];
+                len += 1;
+                hash = (hash << 1) + GEAR[buf[i] & 0xff];
+                if (len == MAX_CHUNK
+                    || (len >= MIN_CHUNK && (hash & CHUNK_MASK) == 0)) {
+                    chunkIds.add(writeChunk(chunk, len));
+                    chunkSizes.add(len);
+                    len = 0;
+                    hash = 0;
+                }
+            }
+        }
+        if (len > 0) {
+            chunkIds.add(writeChunk(chunk, len));
+            chunkSizes.add(len);
+        }
+        if (total != size) {
+            throw new IOException("contents changed while being read");
+        }
+        String id = Codec.bytesToId(whole.digest(), 0);
+        if (!_objects.contains(id)) {
+            Codec.Encoder out = new Codec.Encoder(CHUNKED);
+            out.writeVarint(chunkIds.size());
+            for (int k = 0; k < chunkIds.size(); k += 1) {
+                out.writeId(chunkIds.get(k));
+                out.writeVarint(chunkSizes.get(k));
+            }
+            _objects.write(id, out.toByteArray());
+        }
+        return id;
+    }
+
+    /** Saves the first LEN bytes of CHUNK as a blob, unless it is already
+     *  stored, and returns its sha1. */
+    private String writeChunk(byte[] chunk, int len) {
+        MessageDigest digest = sha1Digest();
+        digest.update(chunk, 0, len);
+        String id = Codec.bytesToId(digest.digest(), 0);
+        if (!_objects.contains(id)) {
+            _objects.write(id, new byte[] { FULL, Codec.VERSION },
+                           Arrays.copyOf(chunk, len));
+        }
+        return id;
+    }
+
+    /** Writes the contents of blob ID to OUT.  Blobs stored in full or in
+     *  chunks are streamed. */
+    void copyTo(String id, OutputStream out) throws IOException {
+        byte[] cached = cached(id);
+        if (cached != null) {
+            out.write(cached);
+            return;
+        }
+        byte[] stored;
+        try (ObjectStore.ObjectStream blob = _objects.open(id)) {
+            byte[] header = blob.readNBytes(2);
+            if (header.length == 2 && header[0] == FULL) {
+                blob.transferTo(out);
+                return;
+            } else if (header.length == 2 && header[0] == CHUNKED) {
+                stored = new byte[(int) blob.size()];
+                System.arraycopy(header, 0, stored, 0, header.length);
+                blob.readNBytes(stored, header.length,
+                                stored.length - header.length);
+            } else {
+                stored = null;
+            }
+        }
+        if (stored == null) {
+            out.write(read(id));
+        } else {
+            copyChunks(stored, out);
+        }
+    }
+
+    /** Writes to OUT the chunks listed in STORED, the stored form of a
+     *  chunked blob, one at a time. */
+    private void copyChunks(byte[] stored, OutputStream out)
+        throws IOException {
+        Codec.Decoder in = new Codec.Decoder(stored, CHUNKED);
+        for (int n = in.readVarint(); n > 0; n -= 1) {
+            String chunkId = in.readId();
+            in.readVarint();
+            copyTo(chunkId, out);
+        }
+    }
+
+    /** Writes the contents of blob ID to the file DEST. */
+    void copyTo(String id, File dest) {
+        try (OutputStream out = new BufferedOutputStream(
+                 new FileOutputStream(dest), ObjectStore.BUFFER_SIZE)) {
+            copyTo(id, out);
+        } catch (IOException excp) {
+            throw error("Could not write %s: %s", dest.getName(),
+                        excp.getMessage());
+        }
+    }
+
+    /** Returns the sha1 that the contents of FILE would have as a blob,
+     *  reading it a buffer at a time. */
+    static String idOf(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest digest = sha1Digest();
+            byte[] buf = new byte[ObjectStore.BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                digest.update(buf, 0, n);
+            }
+            return Codec.bytesToId(digest.digest(), 0);
+        } catch (IOException excp) {
+            throw error("Could not read %s: %s", file.getName(),
+                        excp.getMessage());
+        }
+    }
+
+    /** Returns a new SHA-1 digest. */
+    private static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                                               + "SHA-1");
+        }
+    }
+
+    /** Returns the contents of blob ID. */
+    byte[] read(String id) {
+        byte[] cached = cached(id);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] stored;
+        try (ObjectStore.ObjectStream blob = _objects.open(id)) {
+            byte[] header = blob.readNBytes(2);
+            if (header.length == 2 && header[0] == FULL) {
+                byte[] contents = new byte[(int) blob.size() - 2];
+                blob.readNBytes(contents, 0, contents.length);
+                remember(id, contents);
+                return contents;
+            }
+            stored = new byte[(int) blob.size()];
+            System.arraycopy(header, 0, stored, 0, header.length);
+            blob.readNBytes(stored, header.length,
+                            stored.length - header.length);
+        } catch (IOException excp) {
+            throw error("Could not read blob %s: %s", id, excp.getMessage());
+        }
+        if (stored[0] == CHUNKED) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            try {
+                copyChunks(stored, result);
+            } catch (IOException excp) {
+                throw error("Could not read blob %s: %s", id,
+                            excp.getMessage());
+            }
+            return result.toByteArray();
+        }
+        Codec.Decoder in = new Codec.Decoder(stored, DELTA);
+        in.readVarint();
+        List<String> baseLines = lines(read(in.readId()));
+        StringBuilder result = new StringBuilder();
+        int pos = 0;
+        for (int n = in.readVarint(); n > 0; n -= 1) {
+            int start = in.readVarint();
+            int removed = in.readVarint();
+            for (; pos < start; pos += 1) {
+                result.append(baseLines.get(pos));
+            }
+            pos += removed;
+            for (int added = in.readVarint(); added > 0; added -= 1) {
+                result.append(in.readString(LINE_CHARSET));
+            }
+        }
+        for (; pos < baseLines.size(); pos += 1) {
+            result.append(baseLines.get(pos));
+        }
+        byte[] contents = result.toString().getBytes(LINE_CHARSET);
+        remember(id, contents);
+        return contents;
+    }
+
+    /** Returns true iff blob ID is stored. */
+    boolean contains(String id) {
+        return _objects.contains(id);
+    }
+
+    /** Packs the loose blobs if there are enough of them. */
+    void packIfNeeded() {
+        _objects.packIfNeeded();
+    }
+
+    /** Adds to REACHABLE the blobs IDS and every blob needed to rebuild
+     *  them: the bases of deltas and the chunks of chunked blobs.  Only the
+     *  start of a blob is read, unless it is a chunk list. */
+    void mark(Collection<String> ids, Set<String> reachable) {
+        ArrayDeque<String> pending = new ArrayDeque<>(ids);
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            if (!reachable.add(id)) {
+                continue;
+            }
+            try (ObjectStore.ObjectStream blob = _objects.open(id)) {
+                byte[] header = blob.readNBytes(DELTA_HEADER_SIZE);
+                if (header.length == 0) {
+                    continue;
+                } else if (header[0] == DELTA) {
+                    Codec.Decoder in = new Codec.Decoder(header, DELTA);
+                    in.readVarint();
+                    pending.push(in.readId());
+                } else if (header[0] == CHUNKED) {
+                    byte[] stored = new byte[(int) blob.size()];
+                    System.arraycopy(header, 0, stored, 0, header.length);
+                    blob.readNBytes(stored, header.length,
+                                    stored.length - header.length);
+                    Codec.Decoder in = new Codec.Decoder(stored, CHUNKED);
+                    for (int n = in.readVarint(); n > 0; n -= 1) {
+                        pending.push(in.readId());
+                        in.readVarint();
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("Could not read blob %s: %s", id,
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /** Deletes every blob not in KEEP, packs the rest, and returns the
+     *  number of bytes freed. */
+    long repack(Collection<String> keep) {
+        synchronized (this) {
+            _cache.clear();
+            _cacheSize = 0;
+        }
+        return _objects.repack(keep);
+    }
+
+    /** Forgets the mapped pack files, so that they are mapped again.
+     *  Cached blobs stay, since a blob never changes. */
+    void reload() {
+        _objects.reload();
+    }
+
+    /** Returns the stored form of CONTENTS as a delta against blob BASE, or
+     *  null if a delta would be too deep, too costly to compute, or not
+     *  much smaller than CONTENTS. */
+    private byte[] delta(byte[] contents, String base) {
+        int depth = depth(base) + 1;
+        if (depth > MAX_DEPTH) {
+            return null;
+        }
+        List<String> baseLines = lines(read(base));
+        List<String> newLines = lines(contents);
+        Diff diff = new Diff();
+        diff.setSequences(baseLines, newLines);
+        long lines = baseLines.size() + newLines.size() + 1;
+        if (!diff.withinEdits((int) Math.min(MAX_DELTA_WORK / lines,
+                                             lines))) {
+            return null;
+        }
+        int[] edits = diff.diffs();
+        Codec.Encoder out = new Codec.Encoder(DELTA);
+        out.writeVarint(depth);
+        out.writeId(base);
+        out.writeVarint(edits.length / 4);
+        for (int k = 0; k < edits.length; k += 4) {
+            out.writeVarint(edits[k]);
+            out.writeVarint(edits[k + 1]);
+            out.writeVarint(edits[k + 3]);
+            for (int i = 0; i < edits[k + 3]; i += 1) {
+                out.writeString(newLines.get(edits[k + 2] + i),
+                                LINE_CHARSET);
+            }
+        }
+        byte[] stored = out.toByteArray();
+        return stored.length * 2 < contents.length ? stored : null;
+    }
+
+    /** Returns the number of deltas that must be applied to rebuild blob
+     *  ID, reading only the start of its stored form, or MAX_DEPTH if ID is
+     *  too large to be the base of a delta. */
+    private int depth(String id) {
+        try (ObjectStore.ObjectStream blob = _objects.open(id)) {
+            byte[] header = blob.readNBytes(DEPTH_HEADER_SIZE);
+            if (header.length == 0 || header[0] == CHUNKED
+                || blob.size() > MAX_DELTA_BYTES + 2) {
+                return MAX_DEPTH;
+            } else if (header[0] != DELTA) {
+                return 0;
+            }
+            return new Codec.Decoder(header, DELTA).readVarint();
+        } catch (IOException excp) {
+            throw error("Could not read blob %s: %s", id, excp.getMessage());
+        }
+    }
+
+    /** Returns the lines of CONTENTS, each with its line terminator. Each
+     *  byte becomes one char, so that any contents survive the round trip
+     *  through Diff. */
+    private static List<String> lines(byte[] contents) {
+        ArrayList<String> result = new ArrayList<>();
+        String text = new String(contents, LINE_CHARSET);
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0;
+             end = text.indexOf('\n', start)) {
+            result.add(text.substring(start, end + 1));
+            start = end + 1;
+        }
+        if (start < text.length()) {
+            result.add(text.substring(start));
+        }
+        return result;
+    }
+
+    /** Returns the total size of the blobs in the cache. */
+    synchronized int cacheSize() {
+        return _cacheSize;
+    }
+
+    /** Returns the cached contents of blob ID, or null. */
+    private synchronized byte[] cached(String id) {
+        return _cache.get(id);
+    }
+
+    /** Caches CONTENTS as the contents of blob ID, evicting the least
+     *  recently used blobs to stay within CACHE_BYTES.  Threads reading
+     *  the same blob at once may each remember it; the copy it replaces
+     *  no longer counts against the cache. */
+    private synchronized void remember(String id, byte[] contents) {
+        if (contents.length > CACHE_BYTES / 4) {
+            return;
+        }
+        byte[] old = _cache.put(id, contents);
+        if (old != null) {
+            _cacheSize -= old.length;
+        }
+        _cacheSize += contents.length;
+        Iterator<Map.Entry<String, byte[]>> eldest =
+            _cache.entrySet().iterator();
+        while (_cacheSize > CACHE_BYTES && eldest.hasNext()) {
+            _cacheSize -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /** The random values added into the rolling hash for each byte value.
+     *  The seed is fixed, so chunk boundaries never change. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Length of a delta's type, version and depth. */
+    private static final int DEPTH_HEADER_SIZE = 7;
+
+    /** Length of a delta's type, version, depth and base sha1, given that
+     *  its depth is at most MAX_DEPTH and so takes one byte. */
+    private static final int DELTA_HEADER_SIZE = 3 + Codec.ID_BYTES;
+
+    /** Charset mapping each byte to one char and back. */
+    private static final Charset LINE_CHARSET =
+        StandardCharsets.ISO_8859_1;
+
+    /** The underlying store of stored blob forms. */
+    private final ObjectStore _objects;
+    /** Recently rebuilt blobs, least recently used first. */
+    private final LinkedHashMap<String, byte[]> _cache =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Total size of the blobs in _cache. */
+    private int _cacheSize;
+}
@@ -0,0 +1,55 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A thin client for Daemon: sends its arguments, as a command, to the
+ *  daemon serving the repository in the working directory and prints the
+ *  reply.  It loads none of gitlet unless there is no daemon, in which
+ *  case it runs the command itself, as Main would.
+ */
+public class Client {
+
+    /** Usage: java gitlet.Client ARGS, where ARGS are as for Main. */
+    public static void main(String... args) throws IOException {
+        File socket = new File(new File(System.getProperty("user.dir"),
+                                        ".gitlet"), "daemon.sock");
+        SocketChannel daemon = null;
+        if (socket.exists()) {
+            try {
+                daemon = SocketChannel.open(StandardProtocolFamily.UNIX);
+                daemon.connect(UnixDomainSocketAddress.of(socket.toPath()));
+            } catch (IOException excp) {
+                if (daemon != null) {
+                    daemon.close();
+                }
+                daemon = null;
+            }
+        }
+        if (daemon == null) {
+            Main.main(args);
+            return;
+        }
+        try (SocketChannel channel = daemon) {
+            for (String arg : args) {
+                channel.write(ByteBuffer.wrap(
+                    arg.getBytes(StandardCharsets.UTF_8)));
+                channel.write(ByteBuffer.wrap(NUL));
+            }
+            channel.shutdownOutput();
+            OutputStream out = System.out;
+            Channels.newInputStream(channel).transferTo(out);
+            out.flush();
+        }
+    }
+
+    /** The byte that ends each argument of a request. */
+    private static final byte[] NUL = { 0 };
+}
@@ -0,0 +1,340 @@
+package gitlet;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.error;
+
+/** The on-disk format of commits and the staging area.  Every object
+ *  starts with a type byte and a format version byte, followed by its
+ *  fields: strings are a varint length and their UTF-8 bytes, sha1s are
+ *  their 20 raw bytes, and maps are written in key order, so that equal
+ *  objects always encode to the same bytes.
+ */
+class Codec {
+
+    /** Type byte of an encoded commit. */
+    static final byte COMMIT = 'C';
+
+    /** Type byte of an encoded staging area. */
+    static final byte INDEX = 'X';
+
+    /** Current version of all the formats. */
+    static final byte VERSION = 1;
+
+    /** Flag of a staging area entry staged for addition. */
+    private static final int STAGED_ADD = 1;
+
+    /** Flag of a staging area entry staged for removal. */
+    private static final int STAGED_RM = 2;
+
+    /** Flag of a staging area entry with stat data. */
+    private static final int HAS_STAT = 4;
+
+    /** Number of bytes in a binary sha1. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Returns the encoding of COMMIT. Its sha1 is the commit's id. */
+    static byte[] encode(Commit commit) {
+        Encoder out = new Encoder(COMMIT);
+        String parent1 = commit.getParent1();
+        String parent2 = commit.getParent2();
+        out.writeVarint(parent1 == null ? 0 : parent2 == null ? 1 : 2);
+        if (parent1 != null) {
+            out.writeId(parent1);
+        }
+        if (parent2 != null) {
+            out.writeId(parent2);
+        }
+        out.writeLong(commit.getTime());
+        out.writeString(commit.getMessage());
+        out.writeIdMap(commit.getContents());
+        return out.toByteArray();
+    }
+
+    /** Returns the commit encoded in BYTES. */
+    static Commit decodeCommit(byte[] bytes) {
+        Decoder in = new Decoder(bytes, COMMIT);
+        int parents = in.readVarint();
+        String parent1 = parents > 0 ? in.readId() : null;
+        String parent2 = parents > 1 ? in.readId() : null;
+        long time = in.readLong();
+        Commit commit = new Commit(in.readString(), parent1, parent2, time);
+        in.readIdMap(commit.getContents());
+        return commit;
+    }
+
+    /** Returns the encoding of STAGING: the number of paths it mentions,
+     *  then one entry per path in path order.  An entry is the length of
+     *  the prefix its path shares with the path before it, the rest of
+     *  the path, a byte of flags saying whether the path is staged for
+     *  addition or removal and whether its stat data are known, then its
+     *  staged blob id and its stat data, if it has them. */
+    static byte[] encode(StagingArea staging) {
+        HashSet<String> removed = new HashSet<>(staging.getRm());
+        TreeSet<String> paths = new TreeSet<>(staging.getAdd().keySet());
+        paths.addAll(removed);
+        paths.addAll(staging.getStat().keySet());
+        Encoder out = new Encoder(INDEX);
+        out.writeVarint(paths.size());
+        String prev = "";
+        for (String path : paths) {
+            int shared = 0;
+            while (shared < prev.length() && shared < path.length()
+                   && prev.charAt(shared) == path.charAt(shared)) {
+                shared += 1;
+            }
+            if (shared > 0 && shared < path.length()
+                && Character.isLowSurrogate(path.charAt(shared))) {
+                shared -= 1;
+            }
+            out.writeVarint(shared);
+            out.writeString(path.substring(shared));
+            prev = path;
+            String added = staging.getAdd().get(path);
+            IndexEntry stat = staging.getStat().get(path);
+            out.writeVarint((added != null ? STAGED_ADD : 0)
+                            | (removed.contains(path) ? STAGED_RM : 0)
+                            | (stat != null ? HAS_STAT : 0));
+            if (added != null) {
+                out.writeId(added);
+            }
+            if (stat != null) {
+                out.writeLong(stat.size());
+                out.writeLong(stat.mtime());
+                out.writeLong(stat.ctime());
+                out.writeLong(stat.inode());
+                out.writeId(stat.blobId());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the staging area encoded in BYTES. */
+    static StagingArea decodeStaging(byte[] bytes) {
+        Decoder in = new Decoder(bytes, INDEX);
+        StagingArea staging = new StagingArea();
+        String path = "";
+        for (int n = in.readVarint(); n > 0; n -= 1) {
+            int shared = in.readVarint();
+            path = path.substring(0, shared) + in.readString();
+            int flags = in.readVarint();
+            if ((flags & STAGED_ADD) != 0) {
+                staging.getAdd().put(path, in.readId());
+            }
+            if ((flags & STAGED_RM) != 0) {
+                staging.getRm().add(path);
+            }
+            if ((flags & HAS_STAT) != 0) {
+                staging.getStat().put(path,
+                    new IndexEntry(in.readLong(), in.readLong(),
+                                   in.readLong(), in.readLong(),
+                                   in.readId()));
+            }
+        }
+        return staging;
+    }
+
+    /** Returns the 20 bytes of the hexadecimal sha1 ID. */
+    static byte[] idToBytes(String id) {
+        byte[] result = new byte[ID_BYTES];
+        idToBytes(id, result, 0);
+        return result;
+    }
+
+    /** Stores the 20 bytes of the hexadecimal sha1 ID in DEST at POS. */
+    static void idToBytes(String id, byte[] dest, int pos) {
+        if (id.length() != Utils.UID_LENGTH) {
+            throw error("Malformed object id %s.", id);
+        }
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            dest[pos + i] =
+                (byte) ((Character.digit(id.charAt(2 * i), 16) << 4)
+                        | Character.digit(id.charAt(2 * i + 1), 16));
+        }
+    }
+
+    /** Returns the hexadecimal sha1 held in the 20 bytes of SRC at POS. */
+    static String bytesToId(byte[] src, int pos) {
+        char[] result = new char[Utils.UID_LENGTH];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int b = src[pos + i] & 0xff;
+            result[2 * i] = HEX[b >>> 4];
+            result[2 * i + 1] = HEX[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Lower-case hexadecimal digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Builds one encoded object in a growing byte array. */
+    static class Encoder {
+
+        /** An encoder for an object whose type byte is TYPE. */
+        Encoder(byte type) {
+            _buf = new byte[INITIAL_SIZE];
+            _buf[0] = type;
+            _buf[1] = VERSION;
+            _len = 2;
+        }
+
+        /** Appends the non-negative VAL as a varint: seven bits per byte,
+         *  low bits first, high bit set on all but the last byte. */
+        void writeVarint(int val) {
+            ensure(5);
+            while ((val & ~0x7f) != 0) {
+                _buf[_len++] = (byte) ((val & 0x7f) | 0x80);
+                val >>>= 7;
+            }
+            _buf[_len++] = (byte) val;
+        }
+
+        /** Appends VAL as eight big-endian bytes. */
+        void writeLong(long val) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                _buf[_len++] = (byte) (val >>> shift);
+            }
+        }
+
+        /** Appends the length and UTF-8 bytes of S. */
+        void writeString(String s) {
+            writeString(s, StandardCharsets.UTF_8);
+        }
+
+        /** Appends the length and bytes of S in CHARSET. */
+        void writeString(String s, Charset charset) {
+            byte[] bytes = s.getBytes(charset);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, _buf, _len, bytes.length);
+            _len += bytes.length;
+        }
+
+        /** Appends the hexadecimal sha1 ID as 20 bytes. */
+        void writeId(String id) {
+            ensure(ID_BYTES);
+            idToBytes(id, _buf, _len);
+            _len += ID_BYTES;
+        }
+
+        /** Appends MAP, whose values are sha1s, in key order. */
+        void writeIdMap(TreeMap<String, String> map) {
+            writeVarint(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeId(entry.getValue());
+            }
+        }
+
+        /** Returns the bytes written so far. */
+        byte[] toByteArray() {
+            return Arrays.copyOf(_buf, _len);
+        }
+
+        /** Makes room for N more bytes. */
+        private void ensure(int n) {
+            if (_len + n > _buf.length) {
+                _buf = Arrays.copyOf(_buf, Math.max(2 * _buf.length,
+                                                    _len + n));
+            }
+        }
+
+        /** Starting buffer size, enough for most commits. */
+        private static final int INITIAL_SIZE = 256;
+
+        /** The encoded bytes, of which the first _len are in use. */
+        private byte[] _buf;
+        /** Number of bytes written. */
+        private int _len;
+    }
+
+    /** Reads the fields of one encoded object in order. */
+    static class Decoder {
+
+        /** A decoder for BYTES, which must hold an object whose type byte is
+         *  TYPE in the current format version. */
+        Decoder(byte[] bytes, byte type) {
+            _buf = bytes;
+            if (Legacy.isSerialized(bytes)) {
+                throw error("Gitlet object in the format of an older "
+                            + "gitlet.");
+            }
+            if (bytes.length < 2 || bytes[0] != type) {
+                throw error("Corrupt gitlet object.");
+            }
+            if (bytes[1] != VERSION) {
+                throw error("Unsupported gitlet object version %d.",
+                            bytes[1]);
+            }
+            _pos = 2;
+        }
+
+        /** Returns the next varint. */
+        int readVarint() {
+            int result = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = next(1);
+                result |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+        }
+
+        /** Returns the next eight-byte long. */
+        long readLong() {
+            long result = 0;
+            for (int i = 0; i < 8; i += 1) {
+                result = (result << 8) | (next(1) & 0xff);
+            }
+            return result;
+        }
+
+        /** Returns the next string. */
+        String readString() {
+            return readString(StandardCharsets.UTF_8);
+        }
+
+        /** Returns the next string, whose bytes are in CHARSET. */
+        String readString(Charset charset) {
+            int len = readVarint();
+            next(len);
+            return new String(_buf, _pos - len, len, charset);
+        }
+
+        /** Returns the next sha1 in hexadecimal. */
+        String readId() {
+            next(ID_BYTES);
+            return bytesToId(_buf, _pos - ID_BYTES);
+        }
+
+        /** Reads a map written by Encoder.writeIdMap into MAP. */
+        void readIdMap(TreeMap<String, String> map) {
+            for (int n = readVarint(); n > 0; n -= 1) {
+                String key = readString();
+                map.put(key, readId());
+            }
+        }
+
+        /** Skips N bytes and returns the first of them. */
+        private byte next(int n) {
+            if (n < 0 || _pos + n > _buf.length) {
+                throw error("Corrupt gitlet object.");
+            }
+            _pos += n;
+            return n == 0 ? 0 : _buf[_pos - n];
+        }
+
+        /** The encoded bytes. */
+        private final byte[] _buf;
+        /** Position of the next unread byte. */
+        private int _pos;
+    }
+}
@@ -1,46 +1,53 @@
 package gitlet;
 
-import java.io.Serializable;
-import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.TreeMap;
 
+import static gitlet.Utils.error;
 import static gitlet.Utils.sha1;
 
-public class Commit implements Serializable {
+public class Commit {
 
     /** Commit message, every commit has one. */
     private final String message;
 
-    /** Time stamp for log(). */
-    private String timestamp;
+    /** Time of the commit, in milliseconds since the epoch. */
+    private final long time;
 
-    /** Time stamp format for log(). */
-    private static final SimpleDateFormat TIMESTAMPFORMAT =
-            new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
+    /** Time stamp format for log().  A DateTimeFormatter, unlike a
+     *  SimpleDateFormat, may be shared by threads. */
+    private static final DateTimeFormatter TIMESTAMPFORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z")
+            .withZone(ZoneId.systemDefault());
 
-    /** commit parent1, every commit has to have a parent, except initial
-     * commit, to keep track of the previous commits.*/
-    private Commit parent1;
+    /** sha1 of commit parent1, every commit has to have a parent, except
+     * initial commit, to keep track of the previous commits.*/
+    private final String parent1;
 
-    /** merge commit parent2, it would be null when there's no merge. */
-    private Commit parent2;
+    /** sha1 of merge commit parent2, it would be null when there's no
+     * merge. */
+    private final String parent2;
 
     /** contents in commit, as a TreeMap with key is file name, and value is
-     * blob of the file as strings. */
+     * sha1 of the file's blob in BLOBS_FOLDER. */
     private final TreeMap<String, String> contents = new TreeMap<>();
 
 
-    public Commit(String messageee, Commit parenttt1, Commit parenttt2) {
+    public Commit(String messageee, String parenttt1, String parenttt2) {
+        this(messageee, parenttt1, parenttt2,
+                parenttt1 == null ? 0 : System.currentTimeMillis());
+    }
+
+    /** A commit as read back by Codec, made at TIME. */
+    Commit(String messageee, String parenttt1, String parenttt2, long time) {
         this.message = messageee;
         this.parent1 = parenttt1;
         this.parent2 = parenttt2;
-        this.timestamp = TIMESTAMPFORMAT.format(new Date());
-        if (this.parent1 == null) {
-            Date startTime = new Date(0);
-            this.timestamp = TIMESTAMPFORMAT.format(startTime);
-        }
+        this.time = time;
     }
 
     public String getMessage() {
@@ -48,14 +55,29 @@ public class Commit implements Serializable {
     }
 
     public String getTimestamp() {
-        return this.timestamp;
+        return TIMESTAMPFORMAT.format(Instant.ofEpochMilli(this.time));
+    }
+
+    /** Returns the time, in milliseconds since the epoch, written as
+     *  TIMESTAMP in the format of getTimestamp(). */
+    static long parseTimestamp(String timestamp) {
+        try {
+            return Instant.from(TIMESTAMPFORMAT.parse(timestamp))
+                .toEpochMilli();
+        } catch (DateTimeException excp) {
+            throw error("Malformed commit time %s.", timestamp);
+        }
+    }
+
+    public long getTime() {
+        return this.time;
     }
 
-    public Commit getParent1() {
+    public String getParent1() {
         return this.parent1;
     }
 
-    public Commit getParent2() {
+    public String getParent2() {
         return this.parent2;
     }
 
@@ -72,10 +94,10 @@ public class Commit implements Serializable {
     }
 
     public String getSha1() {
-        return sha1((Object) Utils.serialize(this));
+        return sha1((Object) Codec.encode(this));
     }
 
-    public String getBlobs(String fileName) {
+    public String getBlobId(String fileName) {
         return this.contents.get(fileName);
     }
 
@@ -0,0 +1,480 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static gitlet.Utils.*;
+
+/** The shape of the commit history, kept apart from the commits so that
+ *  history can be walked without decoding them.  The graph file holds one
+ *  fixed-size record per commit, appended as the commit is made, so that
+ *  a commit's parents always come before it.  A record holds the commit's
+ *  20-byte sha1, the positions of the records of its parents (or -1), its
+ *  time and its generation: one more than the largest generation of its
+ *  parents, the initial commit having generation 1.  A commit can only be
+ *  an ancestor of commits of greater generation.  Walks go from record to
+ *  record by position; only their starting points are looked up by
+ *  sha1.  The lookup file holds the positions of the records at the start
+ *  of the graph file, sorted by sha1, so that a sha1 is found by binary
+ *  search; records appended since are scanned, and once there are more
+ *  than TAIL_RECORDS of them, add() merges them into the lookup file.
+ */
+class CommitGraph {
+
+    /** Position standing for no commit. */
+    static final int NONE = -1;
+
+    /** Number of records past the end of the lookup file past which
+     *  add() updates it. */
+    static final int TAIL_RECORDS = 512;
+
+    /** A graph kept in FILE, whose records are looked up by sha1 through
+     *  LOOKUP. */
+    CommitGraph(File file, File lookup) {
+        _file = file;
+        _lookupFile = lookup;
+    }
+
+    /** Appends commit ID, whose parents PARENT1 and PARENT2 (either of
+     *  which may be null) are already in the graph, made at TIME. */
+    void add(String id, String parent1, String parent2, long time) {
+        int p1 = parent1 == null ? NONE : position(parent1);
+        int p2 = parent2 == null ? NONE : position(parent2);
+        if ((parent1 != null && p1 == NONE)
+            || (parent2 != null && p2 == NONE)) {
+            throw error("Commit graph is missing a parent of %s.", id);
+        }
+        int generation = 1 + Math.max(p1 == NONE ? 0 : generation(p1),
+                                      p2 == NONE ? 0 : generation(p2));
+        boolean empty = !_file.isFile() || _file.length() == 0;
+        try (OutputStream out = new FileOutputStream(_file, true)) {
+            if (empty) {
+                out.write(header());
+            }
+            out.write(record(id, p1, p2, time, generation));
+        } catch (IOException excp) {
+            throw error("Could not write commit graph: %s",
+                        excp.getMessage());
+        }
+        _graph = null;
+        if (size() - lookupCount() > TAIL_RECORDS) {
+            relookup();
+        }
+    }
+
+    /** Replaces the graph with the commits in COMMITS, a map of sha1s to
+     *  commits, which must hold the parents of each of its commits. */
+    void rewrite(Map<String, Commit> commits) {
+        HashMap<String, Integer> positions = new HashMap<>();
+        int[] generations = new int[commits.size()];
+        ByteBuffer result = ByteBuffer.allocate(HEADER_SIZE
+                                                + commits.size()
+                                                * RECORD_SIZE);
+        result.put(header());
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        for (String start : commits.keySet()) {
+            pending.push(start);
+            while (!pending.isEmpty()) {
+                String id = pending.peek();
+                if (positions.containsKey(id)) {
+                    pending.pop();
+                    continue;
+                }
+                Commit commit = commits.get(id);
+                if (commit == null) {
+                    throw error("Missing commit %s.", id);
+                }
+                String parent1 = commit.getParent1();
+                String parent2 = commit.getParent2();
+                if (parent1 != null && !positions.containsKey(parent1)) {
+                    pending.push(parent1);
+                } else if (parent2 != null
+                           && !positions.containsKey(parent2)) {
+                    pending.push(parent2);
+                } else {
+                    pending.pop();
+                    int p1 = parent1 == null ? NONE : positions.get(parent1);
+                    int p2 = parent2 == null ? NONE : positions.get(parent2);
+                    int pos = positions.size();
+                    generations[pos] =
+                        1 + Math.max(p1 == NONE ? 0 : generations[p1],
+                                     p2 == NONE ? 0 : generations[p2]);
+                    result.put(record(id, p1, p2, commit.getTime(),
+                                      generations[pos]));
+                    positions.put(id, pos);
+                }
+            }
+        }
+        _lookupFile.delete();
+        _lookup = null;
+        replace(_file, result.array());
+        _graph = null;
+        relookup();
+    }
+
+    /** Forgets the mapped graph and lookup files, so that they are mapped
+     *  again. */
+    void reload() {
+        _graph = null;
+        _lookup = null;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return (graph().limit() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /** Returns the position of commit ID, or NONE if it is not in the
+     *  graph.  The records past the end of the lookup file are scanned
+     *  from the newest, where branch heads usually are, and the lookup
+     *  file is then binary searched. */
+    int position(String id) {
+        byte[] target = Codec.idToBytes(id);
+        ByteBuffer graph = graph();
+        ByteBuffer lookup = lookup();
+        int count = lookupCount();
+        for (int pos = size() - 1; pos >= count; pos -= 1) {
+            if (compareId(graph, pos, target) == 0) {
+                return pos;
+            }
+        }
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int pos = lookup.getInt(lookupEntry(mid));
+            int c = compareId(graph, pos, target);
+            if (c == 0) {
+                return pos;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the position of commit ID, which must be in the graph. */
+    int existingPosition(String id) {
+        int pos = position(id);
+        if (pos == NONE) {
+            throw error("Commit graph is missing commit %s.", id);
+        }
+        return pos;
+    }
+
+    /** Returns the sha1 of the commit at POS. */
+    String id(int pos) {
+        byte[] id = new byte[Codec.ID_BYTES];
+        graph().get(record(pos), id);
+        return Codec.bytesToId(id, 0);
+    }
+
+    /** Returns the position of the first parent of the commit at POS, or
+     *  NONE. */
+    int parent1(int pos) {
+        return graph().getInt(record(pos) + PARENT1_OFFSET);
+    }
+
+    /** Returns the position of the second parent of the commit at POS, or
+     *  NONE. */
+    int parent2(int pos) {
+        return graph().getInt(record(pos) + PARENT2_OFFSET);
+    }
+
+    /** Returns the time of the commit at POS, in milliseconds. */
+    long time(int pos) {
+        return graph().getLong(record(pos) + TIME_OFFSET);
+    }
+
+    /** Returns the generation of the commit at POS. */
+    int generation(int pos) {
+        return graph().getInt(record(pos) + GENERATION_OFFSET);
+    }
+
+    /** Returns true iff the commit at ANCESTOR is the commit at
+     *  DESCENDANT or one of its ancestors.  Only commits of greater
+     *  generation than ANCESTOR are visited. */
+    boolean isAncestor(int ancestor, int descendant) {
+        return new AncestorWalk(descendant).reaches(ancestor);
+    }
+
+    /** Returns the position of the split point of the commits at HEAD and
+     *  OTHER: OTHER if it is an ancestor of HEAD, and otherwise the first
+     *  ancestor of OTHER met in a breadth-first walk from HEAD that takes
+     *  first parents before second ones.  Returns NONE if they have no
+     *  common ancestor.  The walk from HEAD stops at the split point, and
+     *  the ancestors of OTHER are found by a second walk, in decreasing
+     *  order of generation, that goes only as deep as the generation of
+     *  the commit the first walk asks about. */
+    int mergeBase(int head, int other) {
+        if (isAncestor(other, head)) {
+            return other;
+        }
+        AncestorWalk otherSide = new AncestorWalk(other);
+        BitSet headSide = new BitSet(size());
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.addLast(head);
+        while (!queue.isEmpty()) {
+            int pos = queue.removeFirst();
+            if (headSide.get(pos)) {
+                continue;
+            }
+            headSide.set(pos);
+            if (otherSide.reaches(pos)) {
+                return pos;
+            }
+            if (parent1(pos) != NONE) {
+                queue.addLast(parent1(pos));
+            }
+            if (parent2(pos) != NONE) {
+                queue.addLast(parent2(pos));
+            }
+        }
+        return NONE;
+    }
+
+    /** A walk over a commit and its ancestors in decreasing order of
+     *  generation, taken only as far as its callers need. */
+    private class AncestorWalk {
+
+        /** A walk from the commit at START. */
+        AncestorWalk(int start) {
+            _queue = new PriorityQueue<>(
+                (a, b) -> Integer.compare(generation(b), generation(a)));
+            _reached = new BitSet(size());
+            _reached.set(start);
+            _queue.add(start);
+        }
+
+        /** Returns true iff the commit at POS is the start or one of its
+         *  ancestors.  Every ancestor of generation at least that of POS
+         *  has been reached once every commit of greater generation has
+         *  been visited, since its children are all of greater generation
+         *  than it. */
+        boolean reaches(int pos) {
+            int generation = generation(pos);
+            while (!_queue.isEmpty()
+                   && generation(_queue.peek()) > generation) {
+                int next = _queue.poll();
+                reach(parent1(next));
+                reach(parent2(next));
+            }
+            return _reached.get(pos);
+        }
+
+        /** Marks the commit at POS, if any, as reached. */
+        private void reach(int pos) {
+            if (pos != NONE && !_reached.get(pos)) {
+                _reached.set(pos);
+                _queue.add(pos);
+            }
+        }
+
+        /** Reached commits whose parents have not yet been reached, the
+         *  highest generation first. */
+        private final PriorityQueue<Integer> _queue;
+        /** The commits reached so far. */
+        private final BitSet _reached;
+    }
+
+    /** Compares the sha1 of the record at POS in GRAPH with the 20-byte
+     *  ID, as unsigned bytes. */
+    private static int compareId(ByteBuffer graph, int pos, byte[] id) {
+        int start = record(pos);
+        for (int i = 0; i < id.length; i += 1) {
+            int c = Integer.compare(graph.get(start + i) & 0xff, id[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Merges the records past the end of the lookup file into it, so
+     *  that it covers the whole graph. */
+    private void relookup() {
+        ByteBuffer graph = graph();
+        ByteBuffer lookup = lookup();
+        int oldCount = lookupCount();
+        int count = size();
+        Integer[] added = new Integer[count - oldCount];
+        for (int k = 0; k < added.length; k += 1) {
+            added[k] = oldCount + k;
+        }
+        Arrays.sort(added, (a, b) ->
+                    Arrays.compareUnsigned(idBytes(a), idBytes(b)));
+        ByteBuffer result = ByteBuffer.allocate(LOOKUP_HEADER_SIZE
+                                                + count * Integer.BYTES);
+        result.put(LOOKUP_MAGIC).put(VERSION).putInt(count);
+        int k = 0;
+        for (int pos : added) {
+            byte[] id = idBytes(pos);
+            for (; k < oldCount
+                     && compareId(graph, lookup.getInt(lookupEntry(k)),
+                                  id) < 0; k += 1) {
+                result.putInt(lookup.getInt(lookupEntry(k)));
+            }
+            result.putInt(pos);
+        }
+        for (; k < oldCount; k += 1) {
+            result.putInt(lookup.getInt(lookupEntry(k)));
+        }
+        replace(_lookupFile, result.array());
+        _lookup = null;
+    }
+
+    /** Returns the 20-byte sha1 of the commit at POS. */
+    private byte[] idBytes(int pos) {
+        byte[] id = new byte[Codec.ID_BYTES];
+        graph().get(record(pos), id);
+        return id;
+    }
+
+    /** Returns the number of records, at the start of the graph, that the
+     *  lookup file covers.  A lookup file covering more records than
+     *  there are is out of step with the graph, and covers none. */
+    private int lookupCount() {
+        ByteBuffer lookup = lookup();
+        int count = lookup.getInt(LOOKUP_MAGIC.length + 1);
+        return count <= size() ? count : 0;
+    }
+
+    /** Returns the position in the lookup file of its entry K. */
+    private static int lookupEntry(int k) {
+        return LOOKUP_HEADER_SIZE + k * Integer.BYTES;
+    }
+
+    /** Replaces FILE with CONTENTS by writing them to a temporary file and
+     *  renaming it. */
+    private static void replace(File file, byte[] contents) {
+        File temp = new File(file.getPath() + ".tmp");
+        writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Could not write commit graph: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Returns the header of a graph file. */
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).put(VERSION)
+            .array();
+    }
+
+    /** Returns the record for commit ID, whose parents are at P1 and P2,
+     *  made at TIME, of GENERATION. */
+    private static byte[] record(String id, int p1, int p2, long time,
+                                 int generation) {
+        return ByteBuffer.allocate(RECORD_SIZE).put(Codec.idToBytes(id))
+            .putInt(p1).putInt(p2).putLong(time).putInt(generation)
+            .array();
+    }
+
+    /** Returns the position in the file of the record of the commit at
+     *  POS. */
+    private static int record(int pos) {
+        return HEADER_SIZE + pos * RECORD_SIZE;
+    }
+
+    /** Returns the mapped graph file, mapping it if need be.  An empty
+     *  buffer with just a header stands for a missing file. */
+    private ByteBuffer graph() {
+        if (_graph == null) {
+            if (!_file.isFile()) {
+                _graph = ByteBuffer.wrap(header());
+                return _graph;
+            }
+            try (FileChannel channel = FileChannel.open(_file.toPath())) {
+                _graph = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                     channel.size());
+            } catch (IOException excp) {
+                throw error("Could not read commit graph: %s",
+                            excp.getMessage());
+            }
+            byte[] magic = new byte[MAGIC.length];
+            _graph.get(0, magic);
+            if (_graph.limit() < HEADER_SIZE || !Arrays.equals(magic, MAGIC)
+                || _graph.get(MAGIC.length) != VERSION) {
+                throw error("Corrupt commit graph %s.", _file);
+            }
+        }
+        return _graph;
+    }
+
+    /** Returns the mapped lookup file, mapping it if need be.  An empty
+     *  lookup file, covering no records, stands for a missing one. */
+    private ByteBuffer lookup() {
+        if (_lookup == null) {
+            _lookup = ByteBuffer.allocate(LOOKUP_HEADER_SIZE);
+            if (_lookupFile.isFile()) {
+                try (FileChannel channel =
+                     FileChannel.open(_lookupFile.toPath())) {
+                    _lookup = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                          channel.size());
+                } catch (IOException excp) {
+                    throw error("Could not read commit graph: %s",
+                                excp.getMessage());
+                }
+                byte[] magic = new byte[LOOKUP_MAGIC.length];
+                _lookup.get(0, magic);
+                if (_lookup.limit() < LOOKUP_HEADER_SIZE
+                    || !Arrays.equals(magic, LOOKUP_MAGIC)
+                    || _lookup.get(LOOKUP_MAGIC.length) != VERSION
+                    || _lookup.limit() < lookupEntry(
+                           _lookup.getInt(LOOKUP_MAGIC.length + 1))) {
+                    throw error("Corrupt commit graph lookup %s.",
+                                _lookupFile);
+                }
+            }
+        }
+        return _lookup;
+    }
+
+    /** First bytes of a graph file. */
+    private static final byte[] MAGIC = {'G', 'C', 'G', 'R'};
+    /** Version of the graph format. */
+    private static final byte VERSION = 1;
+    /** Size of the header: magic and version. */
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    /** First bytes of a lookup file. */
+    private static final byte[] LOOKUP_MAGIC = {'G', 'C', 'G', 'L'};
+    /** Size of the lookup header: magic, version and the number of
+     *  records covered, which is also the number of entries. */
+    private static final int LOOKUP_HEADER_SIZE = LOOKUP_MAGIC.length + 1
+        + Integer.BYTES;
+    /** Offset in a record of the first parent's position. */
+    private static final int PARENT1_OFFSET = Codec.ID_BYTES;
+    /** Offset in a record of the second parent's position. */
+    private static final int PARENT2_OFFSET = PARENT1_OFFSET + Integer.BYTES;
+    /** Offset in a record of the commit time. */
+    private static final int TIME_OFFSET = PARENT2_OFFSET + Integer.BYTES;
+    /** Offset in a record of the generation. */
+    private static final int GENERATION_OFFSET = TIME_OFFSET + Long.BYTES;
+    /** Size of a record. */
+    private static final int RECORD_SIZE = GENERATION_OFFSET + Integer.BYTES;
+
+    /** The graph file. */
+    private final File _file;
+    /** The mapped graph file, or null if not yet mapped. */
+    private ByteBuffer _graph;
+    /** The file of the positions of records, sorted by sha1. */
+    private final File _lookupFile;
+    /** The mapped lookup file, or null if not yet mapped. */
+    private ByteBuffer _lookup;
+}
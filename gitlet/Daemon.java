@@ -0,0 +1,198 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+
+/** A long-running gitlet that serves the commands of one repository over
+ *  the Unix domain socket .gitlet/daemon.sock, so that they need not each
+ *  start a JVM and read the repository from scratch.  A request is the
+ *  command's arguments in UTF-8, each followed by a NUL byte, after which
+ *  the client shuts down its side of the connection; the reply is what the
+ *  command prints, and the connection is then closed.  Any client that
+ *  can do that will serve: Client is one.  Commands run one at a time.
+ *  Decoded commits and blobs, the JVM's compiled code and its thread
+ *  pools stay warm from one command to the next, in the one Repository the
+ *  daemon keeps open; the refs, the staging area and the mapped pack and
+ *  graph files are read afresh for each command, so commands run by other
+ *  processes in between are seen.  The request "daemon stop" stops the
+ *  daemon.  Since one client at a time is served, a client has TIMEOUT
+ *  milliseconds to send its request and as long to take its reply, and a
+ *  request may be at most MAX_REQUEST bytes; a client that overruns
+ *  either is dropped.  Commands that would wait on the daemon's own
+ *  standard input, or start another daemon, are refused.
+ */
+class Daemon {
+
+    /** Returns the socket the daemon for REPO listens on. */
+    static File socket(Repository repo) {
+        return join(repo.gitletFolder(), "daemon.sock");
+    }
+
+    /** Serves commands on REPO on its socket until asked to stop. */
+    static void serve(Repository repo) throws IOException {
+        File socket = socket(repo);
+        UnixDomainSocketAddress address =
+            UnixDomainSocketAddress.of(socket.toPath());
+        if (socket.exists()) {
+            try {
+                SocketChannel.open(address).close();
+            } catch (IOException excp) {
+                socket.delete();
+            }
+            if (socket.exists()) {
+                throw error("A gitlet daemon is already running.");
+            }
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            socket.deleteOnExit();
+            boolean stop = false;
+            while (!stop) {
+                try (SocketChannel client = server.accept()) {
+                    stop = handle(repo, client);
+                } catch (IOException excp) {
+                    System.err.println("Daemon: " + excp.getMessage());
+                }
+            }
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /** Runs the command CLIENT sends on REPO and replies with its output.
+     *  Returns true iff the command asks the daemon to stop. */
+    private static boolean handle(Repository repo, SocketChannel client)
+        throws IOException {
+        long deadline = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        client.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            String[] args =
+                parseRequest(readRequest(client, selector, deadline));
+            if (Arrays.equals(args, STOP)) {
+                return true;
+            }
+            deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+            writeReply(client, selector, deadline, run(repo, args));
+            return false;
+        }
+    }
+
+    /** Returns the output of the command ARGS, run on REPO in this
+     *  JVM. */
+    static byte[] run(Repository repo, String... args) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8);
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                throw error("A gitlet daemon is already running.");
+            }
+            if (args.length == 1 && args[0].equals("batch")) {
+                throw error("The daemon can only run a batch from a file.");
+            }
+            repo.refresh();
+            Main.run(repo, out, args);
+        } catch (GitletException excp) {
+            out.println(excp.getMessage());
+        } catch (IOException | RuntimeException excp) {
+            out.println("Error: " + excp);
+        } finally {
+            out.flush();
+        }
+        return output.toByteArray();
+    }
+
+    /** Returns the request read from CLIENT, a non-blocking channel,
+     *  waiting on SELECTOR until the client shuts down its side or
+     *  DEADLINE, a System.nanoTime(), passes. */
+    private static byte[] readRequest(SocketChannel client,
+                                      Selector selector, long deadline)
+        throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        client.register(selector, SelectionKey.OP_READ);
+        while (true) {
+            int n = client.read(buffer);
+            if (n < 0) {
+                return request.toByteArray();
+            }
+            request.write(buffer.array(), 0, n);
+            buffer.clear();
+            if (request.size() > MAX_REQUEST) {
+                throw new IOException("request too long");
+            }
+            if (n == 0) {
+                await(selector, deadline, "request");
+            }
+        }
+    }
+
+    /** Writes REPLY to CLIENT, a non-blocking channel, waiting on
+     *  SELECTOR while it is not ready to take more, until DEADLINE, a
+     *  System.nanoTime(), passes. */
+    private static void writeReply(SocketChannel client, Selector selector,
+                                   long deadline, byte[] reply)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(reply);
+        client.keyFor(selector).interestOps(SelectionKey.OP_WRITE);
+        while (buffer.hasRemaining()) {
+            if (client.write(buffer) == 0) {
+                await(selector, deadline, "reply");
+            }
+        }
+    }
+
+    /** Waits on SELECTOR until its channel is ready, throwing an
+     *  exception naming WHAT if DEADLINE, a System.nanoTime(), passes
+     *  first. */
+    private static void await(Selector selector, long deadline, String what)
+        throws IOException {
+        long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (left <= 0 || (selector.select(left) == 0
+                          && System.nanoTime() - deadline >= 0)) {
+            throw new IOException(what + " timed out");
+        }
+        selector.selectedKeys().clear();
+    }
+
+    /** Returns the arguments of REQUEST. */
+    static String[] parseRequest(byte[] request) {
+        ArrayList<String> args = new ArrayList<>();
+        int start = 0;
+        for (int k = 0; k < request.length; k += 1) {
+            if (request[k] == 0) {
+                args.add(new String(request, start, k - start,
+                                    StandardCharsets.UTF_8));
+                start = k + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** The request that stops the daemon. */
+    private static final String[] STOP = { "daemon", "stop" };
+    /** Milliseconds a client has to send its request, and to take its
+     *  reply. */
+    static final int TIMEOUT = 10000;
+    /** Largest request, in bytes. */
+    static final int MAX_REQUEST = 1 << 20;
+    /** Size of the buffer requests are read into. */
+    private static final int BUFFER_SIZE = 8192;
+}
@@ -6,19 +6,20 @@ import java.util.List;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
 
-import static java.lang.Math.max;
-
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
- *  next.
+ *  next.  They are found with Myers's O(ND) algorithm in its linear-space,
+ *  divide-and-conquer form, so that comparing sequences of lengths N and M
+ *  that differ by D items takes time proportional to (N + M) D and space
+ *  proportional to N + M.
  *  @author P. N. Hilfinger */
 public class Diff {
 
@@ -27,8 +28,8 @@ public class Diff {
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
+        _a = _b = null;
+        _common = null;
     }
 
     /** Set the sequences currently being compared to the contents
@@ -48,8 +49,8 @@ public class Diff {
                  excp) {
             _lines2 = Collections.emptyList();
         }
-        _lls = null;
-        _todo = null;
+        _a = _b = null;
+        _common = null;
     }
 
     /** Return the first of the current sequences. */
@@ -76,76 +77,56 @@ public class Diff {
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
-        }
         if (k1 == 0 || k2 == 0
             || k1 > _lines1.size() || k2 > _lines2.size()) {
             return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
-                } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
-                }
-            }
+        } else if (k1 == _lines1.size() && k2 == _lines2.size()) {
+            return lls();
         }
-        return _lls[k1][k2];
+        encode();
+        return (k1 + k2 - distance(0, k1, 0, k2, k1 + k2)) / 2;
     }
 
     /** Return the length of the longest common subsequence of the current
      *  data subsequences. */
     public int lls() {
-        checkData();
-        return lls(_lines1.size(), _lines2.size());
+        int[] common = commonSubsequence();
+        int result;
+        result = 0;
+        for (int k = 2; k < common.length; k += 3) {
+            result += common[k];
+        }
+        return result;
     }
 
     /** Return true iff the sequences currently being compared have identical
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
+        return _lines1.equals(_lines2);
+    }
+
+    /** Return true iff the first of the sequences being compared can be
+     *  turned into the second by deleting and inserting at most MAXEDITS
+     *  items in all.  This takes time proportional to MAXEDITS times the
+     *  lengths of the sequences, however far apart they are, so it is a
+     *  cheap test of whether diffs() is worth calling. */
+    public boolean withinEdits(int maxEdits) {
+        checkData();
+        if (maxEdits < 0) {
             return false;
         }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        encode();
+        int lo1, hi1, lo2, hi2;
+        lo1 = lo2 = 0;
+        hi1 = _a.length; hi2 = _b.length;
+        while (lo1 < hi1 && lo2 < hi2 && _a[lo1] == _b[lo2]) {
+            lo1 += 1; lo2 += 1;
+        }
+        while (lo1 < hi1 && lo2 < hi2 && _a[hi1 - 1] == _b[hi2 - 1]) {
+            hi1 -= 1; hi2 -= 1;
+        }
+        return distance(lo1, hi1, lo2, hi2, maxEdits) >= 0;
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -166,30 +147,19 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
-            } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
-                }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
-            }
+        checkData();
+        if (_common == null) {
+            encode();
+            int size = (_a.length + _b.length + 1) / 2 * 2 + 2;
+            _forward = new int[size];
+            _backward = new int[size];
+            _runs = new int[3 * 16];
+            _numRuns = 0;
+            compare(0, _a.length, 0, _b.length);
+            _common = Arrays.copyOf(_runs, 3 * _numRuns);
+            _forward = _backward = _runs = null;
         }
-        return toIntArr(resultList);
+        return _common.clone();
     }
 
     /** Return the edit that converts the first of the sequences being compared
@@ -224,53 +194,216 @@ public class Diff {
         return toIntArr(result);
     }
 
-    /** Raise an exception if there are no current data sequences for
-     *  comparison. */
-    private void checkData() {
-        if (_lines1 == null) {
-            throw new IllegalStateException("no sequences specified");
+    /** Set _a and _b to the current sequences, with each item replaced by
+     *  a number that is the same for equal items, so that they can be
+     *  compared quickly. */
+    private void encode() {
+        if (_a != null) {
+            return;
+        }
+        HashMap<String, Integer> codes = new HashMap<>();
+        _a = encode(_lines1, codes);
+        _b = encode(_lines2, codes);
+    }
+
+    /** Return the codes of the items of LINES, adding new ones to
+     *  CODES. */
+    private static int[] encode(List<String> lines,
+                                HashMap<String, Integer> codes) {
+        int[] result = new int[lines.size()];
+        int i;
+        i = 0;
+        for (String line : lines) {
+            Integer code = codes.putIfAbsent(line, codes.size());
+            result[i] = code == null ? codes.size() - 1 : code;
+            i += 1;
+        }
+        return result;
+    }
+
+    /** Record in _runs a longest common subsequence of _a[LO1 .. HI1 - 1]
+     *  and _b[LO2 .. HI2 - 1].  Their common prefix and suffix are taken
+     *  off first; what is left is split at the middle of one of its
+     *  shortest edit paths, found by bisect, and each side compared in
+     *  turn. */
+    private void compare(int lo1, int hi1, int lo2, int hi2) {
+        int prefix, suffix;
+        prefix = 0;
+        while (lo1 + prefix < hi1 && lo2 + prefix < hi2
+               && _a[lo1 + prefix] == _b[lo2 + prefix]) {
+            prefix += 1;
+        }
+        match(lo1, lo2, prefix);
+        lo1 += prefix; lo2 += prefix;
+        suffix = 0;
+        while (lo1 < hi1 - suffix && lo2 < hi2 - suffix
+               && _a[hi1 - suffix - 1] == _b[hi2 - suffix - 1]) {
+            suffix += 1;
+        }
+        hi1 -= suffix; hi2 -= suffix;
+        if (lo1 < hi1 && lo2 < hi2) {
+            long split = bisect(lo1, hi1, lo2, hi2);
+            if (split >= 0) {
+                int x = (int) (split >>> 32), y = (int) split;
+                compare(lo1, x, lo2, y);
+                compare(x, hi1, y, hi2);
+            }
         }
+        match(hi1, hi2, suffix);
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
+    /** Return a point on a shortest edit path from _a[LO1 .. HI1 - 1] to
+     *  _b[LO2 .. HI2 - 1], packed as its index in _a times 2**32 plus its
+     *  index in _b, or -1 if they have nothing in common.  The point is
+     *  where the D-paths searched forward from the start and backward from
+     *  the end first overlap, so that it splits the edit roughly in half
+     *  (Myers's "middle snake"); _forward and _backward hold the furthest
+     *  x reached on each diagonal in the two directions.  Diagonals that
+     *  run off the end of either sequence are dropped from the search. */
+    private long bisect(int lo1, int hi1, int lo2, int hi2) {
+        int n = hi1 - lo1, m = hi2 - lo2;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD, length = 2 * maxD + 2;
+        Arrays.fill(_forward, 0, length, -1);
+        Arrays.fill(_backward, 0, length, -1);
+        _forward[offset + 1] = _backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int start1, end1, start2, end2;
+        start1 = end1 = start2 = end2 = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k = -d + start1; k <= d - end1; k += 2) {
+                int x = next(_forward, offset, k, d);
+                int y = x - k;
+                while (x < n && y < m && _a[lo1 + x] == _b[lo2 + y]) {
+                    x += 1; y += 1;
+                }
+                _forward[offset + k] = x;
+                if (x > n) {
+                    end1 += 2;
+                } else if (y > m) {
+                    start1 += 2;
+                } else if (front) {
+                    int k2 = offset + delta - k;
+                    if (k2 >= 0 && k2 < length && _backward[k2] != -1
+                        && x >= n - _backward[k2]) {
+                        return ((long) (lo1 + x) << 32) | (lo2 + y);
+                    }
+                }
+            }
+            for (int k = -d + start2; k <= d - end2; k += 2) {
+                int x = next(_backward, offset, k, d);
+                int y = x - k;
+                while (x < n && y < m
+                       && _a[hi1 - x - 1] == _b[hi2 - y - 1]) {
+                    x += 1; y += 1;
+                }
+                _backward[offset + k] = x;
+                if (x > n) {
+                    end2 += 2;
+                } else if (y > m) {
+                    start2 += 2;
+                } else if (!front) {
+                    int k1 = offset + delta - k;
+                    if (k1 >= 0 && k1 < length && _forward[k1] != -1) {
+                        int x1 = _forward[k1];
+                        int y1 = offset + x1 - k1;
+                        if (x1 >= n - x) {
+                            return ((long) (lo1 + x1) << 32) | (lo2 + y1);
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
     }
 
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
+    /** Return the x at which a D-path on diagonal K starts, given V, the
+     *  furthest x reached on each diagonal (offset by OFFSET) by the
+     *  (D-1)-paths: one step right from diagonal K - 1 or one step down
+     *  from diagonal K + 1, whichever is further on. */
+    private static int next(int[] v, int offset, int k, int d) {
+        if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+            return v[offset + k + 1];
+        } else {
+            return v[offset + k - 1] + 1;
+        }
     }
 
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
+    /** Return the least number of items that must be deleted from
+     *  _a[LO1 .. HI1 - 1] and inserted into it to make _b[LO2 .. HI2 - 1],
+     *  or -1 if that is more than LIMIT.  Only searches forward, so it
+     *  needs no more than LIMIT steps over each diagonal. */
+    private int distance(int lo1, int hi1, int lo2, int hi2, int limit) {
+        int n = hi1 - lo1, m = hi2 - lo2;
+        int maxD = Math.min(limit, n + m);
+        int offset = maxD + 1;
+        int[] v = new int[2 * maxD + 3];
+        v[offset + 1] = 0;
+        for (int d = 0; d <= maxD; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = next(v, offset, k, d);
+                int y = x - k;
+                while (x < n && y < m && _a[lo1 + x] == _b[lo2 + y]) {
+                    x += 1; y += 1;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return d;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Record in _runs that _a[I1 .. I1 + L - 1] matches
+     *  _b[I2 .. I2 + L - 1], joining it to the run before if they
+     *  touch. */
+    private void match(int i1, int i2, int L) {
+        if (L == 0) {
+            return;
+        }
+        int last = 3 * (_numRuns - 1);
+        if (_numRuns > 0 && _runs[last] + _runs[last + 2] == i1
+            && _runs[last + 1] + _runs[last + 2] == i2) {
+            _runs[last + 2] += L;
+            return;
+        }
+        if (3 * _numRuns == _runs.length) {
+            _runs = Arrays.copyOf(_runs, 2 * _runs.length);
+        }
+        _runs[3 * _numRuns] = i1;
+        _runs[3 * _numRuns + 1] = i2;
+        _runs[3 * _numRuns + 2] = L;
+        _numRuns += 1;
     }
 
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
+    /** Raise an exception if there are no current data sequences for
+     *  comparison. */
+    private void checkData() {
+        if (_lines1 == null) {
+            throw new IllegalStateException("no sequences specified");
+        }
     }
 
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
+    /** The current sequences with each item replaced by its code, or null
+     *  if not yet computed. */
+    private int[] _a, _b;
+
+    /** The result of commonSubsequence(), or null if not yet computed. */
+    private int[] _common;
+
+    /** The runs of matching items found so far by compare, in the form
+     *  commonSubsequence() returns, in the first 3 * _numRuns places. */
+    private int[] _runs;
+    /** The number of runs in _runs. */
+    private int _numRuns;
 
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** Work arrays for bisect: the furthest x reached on each diagonal
+     *  going forward and going backward. */
+    private int[] _forward, _backward;
 
 }
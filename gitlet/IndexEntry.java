@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** What the staging area remembers about a working file: its size, its
+ *  modification and change times, in nanoseconds, and its inode number
+ *  when it last had blob id BLOBID.  While a file's stat data still
+ *  match, its blob id can be trusted without reading the file, unless the
+ *  file was modified no earlier than the staging area was last written,
+ *  in which case it could have changed again within the same tick of the
+ *  file system's clock.
+ */
+class IndexEntry {
+
+    /** An entry for a file of SIZE bytes, modified at MTIME and changed at
+     *  CTIME, with inode INODE, whose contents have blob id BLOBID. */
+    IndexEntry(long size, long mtime, long ctime, long inode,
+               String blobId) {
+        _size = size;
+        _mtime = mtime;
+        _ctime = ctime;
+        _inode = inode;
+        _blobId = blobId;
+    }
+
+    /** Returns the stat data of FILE with blob id BLOBID, or null if FILE
+     *  does not exist.  Where the file system does not give change times
+     *  and inodes, they are taken as the modification time and 0. */
+    static IndexEntry of(File file, String blobId) {
+        try {
+            Map<String, Object> unix =
+                Files.readAttributes(file.toPath(), UNIX_ATTRIBUTES,
+                                     LinkOption.NOFOLLOW_LINKS);
+            return new IndexEntry((Long) unix.get("size"),
+                                  nanos(unix.get("lastModifiedTime")),
+                                  nanos(unix.get("ctime")),
+                                  ((Number) unix.get("ino")).longValue(),
+                                  blobId);
+        } catch (UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            try {
+                BasicFileAttributes basic =
+                    Files.readAttributes(file.toPath(),
+                                         BasicFileAttributes.class,
+                                         LinkOption.NOFOLLOW_LINKS);
+                long mtime = nanos(basic.lastModifiedTime());
+                return new IndexEntry(basic.size(), mtime, mtime, 0,
+                                      blobId);
+            } catch (IOException excp2) {
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Returns true iff OTHER has the same stat data as this entry,
+     *  whatever their blob ids. */
+    boolean sameStat(IndexEntry other) {
+        return other != null && _size == other._size
+            && _mtime == other._mtime && _ctime == other._ctime
+            && _inode == other._inode;
+    }
+
+    /** Returns true iff this entry's file was modified too close to
+     *  WRITTEN, the time the staging area holding it was written, for its
+     *  stat data to show every change. */
+    boolean isRacy(long written) {
+        return _mtime >= written;
+    }
+
+    /** Returns the size of the file. */
+    long size() {
+        return _size;
+    }
+
+    /** Returns the modification time of the file. */
+    long mtime() {
+        return _mtime;
+    }
+
+    /** Returns the change time of the file. */
+    long ctime() {
+        return _ctime;
+    }
+
+    /** Returns the inode of the file. */
+    long inode() {
+        return _inode;
+    }
+
+    /** Returns the blob id of the file's contents. */
+    String blobId() {
+        return _blobId;
+    }
+
+    /** Returns TIME, a FileTime, in nanoseconds. */
+    private static long nanos(Object time) {
+        return ((FileTime) time).to(TimeUnit.NANOSECONDS);
+    }
+
+    /** The attributes read from the unix view. */
+    private static final String UNIX_ATTRIBUTES =
+        "unix:size,lastModifiedTime,ctime,ino";
+
+    /** Size of the file. */
+    private final long _size;
+    /** Modification time of the file. */
+    private final long _mtime;
+    /** Change time of the file. */
+    private final long _ctime;
+    /** Inode of the file. */
+    private final long _inode;
+    /** Blob id of the file's contents. */
+    private final String _blobId;
+}
@@ -0,0 +1,209 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+import static java.io.ObjectStreamConstants.STREAM_MAGIC;
+
+/** The objects of a repository made by the first gitlet, which saved them
+ *  with Java serialization and had no format file.  Each commit file held
+ *  the whole commit, with its parent commits inside it rather than their
+ *  ids and the contents of its files rather than blob ids; the staging
+ *  area held the contents of the files staged; and the branches file was
+ *  a map from branch names to commit ids that also held "HEAD" and
+ *  "CURBRANCH".  They are read into the shadow classes OldCommit and
+ *  OldStaging, whose fields match those of the classes that wrote them,
+ *  so that Repository can rewrite them in the current format.  Only
+ *  those classes, strings and the collections they use may be read.
+ */
+class Legacy {
+
+    /** Returns true iff BYTES start like a Java serialization stream. */
+    static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2
+            && (((bytes[0] & 0xff) << 8) | (bytes[1] & 0xff))
+               == (STREAM_MAGIC & 0xffff);
+    }
+
+    /** Returns true iff FILE exists and starts like a Java serialization
+     *  stream. */
+    static boolean isSerialized(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return isSerialized(in.readNBytes(2));
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Returns the commit saved in FILE, having checked that it and its
+     *  ancestors have all their fields and well-formed times. */
+    static OldCommit readCommit(File file) {
+        OldCommit result = read(file, OldCommit.class);
+        Set<OldCommit> seen =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<OldCommit> todo = new ArrayDeque<>();
+        todo.push(result);
+        while (!todo.isEmpty()) {
+            OldCommit commit = todo.pop();
+            if (!seen.add(commit)) {
+                continue;
+            }
+            if (commit.message == null || commit.contents == null
+                || commit.timestamp == null) {
+                throw error("Cannot read %s, saved by an older gitlet: "
+                            + "incomplete commit.", file.getName());
+            }
+            commit.time();
+            for (OldCommit parent : new OldCommit[] {
+                    commit.parent1, commit.parent2 }) {
+                if (parent != null) {
+                    todo.push(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the staging area saved in FILE. */
+    static OldStaging readStaging(File file) {
+        return read(file, OldStaging.class);
+    }
+
+    /** Returns the branches map saved in FILE. */
+    @SuppressWarnings("unchecked")
+    static TreeMap<String, String> readBranches(File file) {
+        return read(file, TreeMap.class);
+    }
+
+    /** Returns the object of class EXPECTEDCLASS saved in FILE. */
+    private static <T> T read(File file, Class<T> expectedClass) {
+        try (Input in = new Input(readContents(file))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassNotFoundException
+                 | ClassCastException excp) {
+            throw error("Cannot read %s, saved by an older gitlet: %s",
+                        file.getName(), excp.getMessage() != null
+                        ? excp.getMessage() : excp.getClass().getName());
+        }
+    }
+
+    /** A commit as the first gitlet saved it. */
+    static class OldCommit implements Serializable {
+
+        /** Returns the commit message. */
+        String message() {
+            return message;
+        }
+
+        /** Returns the time of the commit, in milliseconds since the
+         *  epoch. */
+        long time() {
+            return Commit.parseTimestamp(timestamp);
+        }
+
+        /** Returns the first parent, or null. */
+        OldCommit parent1() {
+            return parent1;
+        }
+
+        /** Returns the second parent, or null. */
+        OldCommit parent2() {
+            return parent2;
+        }
+
+        /** Returns the map of file names to file contents. */
+        TreeMap<String, String> contents() {
+            return contents;
+        }
+
+        /** Commit message. */
+        private String message;
+        /** Time of the commit, as Commit.getTimestamp() formats it. */
+        private String timestamp;
+        /** First parent. */
+        private OldCommit parent1;
+        /** Second parent, of a merge. */
+        private OldCommit parent2;
+        /** File names mapped to file contents. */
+        private TreeMap<String, String> contents;
+
+        /** Identifies this version of the class; never checked, since
+         *  the class stands in for another. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** A staging area as the first gitlet saved it. */
+    static class OldStaging implements Serializable {
+
+        /** Returns the map of names to contents of files staged for
+         *  addition. */
+        TreeMap<String, String> stageAdd() {
+            return stageAdd;
+        }
+
+        /** Returns the names of files staged for removal. */
+        ArrayList<String> stageRm() {
+            return stageRm;
+        }
+
+        /** File names mapped to the contents staged for addition. */
+        private TreeMap<String, String> stageAdd;
+        /** Files staged for removal. */
+        private ArrayList<String> stageRm;
+
+        /** Identifies this version of the class; never checked, since
+         *  the class stands in for another. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** A stream that reads gitlet.Commit and gitlet.StagingArea objects as
+     *  OldCommits and OldStagings.  The description of each class in the
+     *  stream is replaced by that of its shadow class, which has the same
+     *  fields, so the fields are read into the shadow class without its
+     *  serialVersionUID being compared with the one in the stream. */
+    private static class Input extends ObjectInputStream {
+
+        /** A stream reading the objects serialized in BYTES. */
+        Input(byte[] bytes) throws IOException {
+            super(new ByteArrayInputStream(bytes));
+            setObjectInputFilter(FILTER);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            switch (desc.getName()) {
+            case "gitlet.Commit":
+                return ObjectStreamClass.lookup(OldCommit.class);
+            case "gitlet.StagingArea":
+                return ObjectStreamClass.lookup(OldStaging.class);
+            default:
+                return desc;
+            }
+        }
+    }
+
+    /** The classes that may be read. */
+    private static final ObjectInputFilter FILTER =
+        ObjectInputFilter.Config.createFilter(
+            "gitlet.Legacy$Old*;java.lang.String;java.lang.Object;"
+            + "java.util.TreeMap;java.util.ArrayList;!*");
+}
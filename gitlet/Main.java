@@ -1,9 +1,15 @@
 package gitlet;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
 
 
-/** Driver class for Gitlet, the tiny stupid version-control system.
+/** Driver class for Gitlet, the tiny stupid version-control system.  It
+ *  only parses commands, runs them on a Repository and prints what they
+ *  return.
  *  @author Qingyi Fang
  */
 public class Main {
@@ -11,159 +17,215 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws IOException {
+        try {
+            run(new File(System.getProperty("user.dir")), System.out, args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Runs the command ARGS on the repository in DIR, printing its
+     *  results on OUT, and throwing a GitletException whose message is to
+     *  be printed if it fails. */
+    static void run(File dir, PrintStream out, String... args)
+        throws IOException {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw Utils.error("Please enter a command.");
         }
-        if (!args[0].equals("init")) {
-            if (!Bloop.GITLET_FOLDER.exists()) {
-                System.out.println("Not in an initialized Gitlet directory.");
-                System.exit(0);
-            }
+        if (args[0].equals("init")) {
+            iHateStyleCheck(1, args);
+            Repository.init(dir);
+        } else {
+            run(Repository.open(dir), out, args);
         }
+    }
 
+    /** Runs the command ARGS on REPO, as run(File, PrintStream, String...)
+     *  does. */
+    static void run(Repository repo, PrintStream out, String... args)
+        throws IOException {
+        if (args.length == 0) {
+            throw Utils.error("Please enter a command.");
+        }
         if (args[0].equals("init") || args[0].equals("add")
                 || args[0].equals("commit")
                 || args[0].equals("log") || args[0].equals("checkout")) {
-            mainHelper1(args);
+            mainHelper1(repo, out, args);
         } else if (args[0].equals("rm") || args[0].equals("global-log")
                 || args[0].equals("find")
                 || args[0].equals("status") || args[0].equals("branch")
                 || args[0].equals("rm-branch")) {
-            mainHelper2(args);
-        } else if (args[0].equals("reset") || args[0].equals("merge")) {
-            mainHelper3(args);
+            mainHelper2(repo, out, args);
+        } else if (args[0].equals("reset") || args[0].equals("merge")
+                || args[0].equals("gc") || args[0].equals("daemon")
+                || args[0].equals("batch")) {
+            mainHelper3(repo, out, args);
         } else {
-            System.out.println("No command with that name exists.");
-            System.exit(0);
+            throw Utils.error("No command with that name exists.");
         }
 
 
 
     }
 
-    public static void mainHelper1(String... args) throws IOException {
+    public static void mainHelper1(Repository repo, PrintStream out,
+                                   String... args) throws IOException {
         if (args[0].equals("init")) {
-            if (iHateStyleCheck(1, args)) {
-                Bloop.init();
-            } else {
-                System.exit(0);
-            }
+            iHateStyleCheck(1, args);
+            Repository.init(repo.root());
         }
         if (args[0].equals("add")) {
-            if (iHateStyleCheck(2, args)) {
-                Bloop.add(args[1]);
-            } else {
-                System.exit(0);
+            if (args.length < 2) {
+                throw Utils.error("Incorrect operands.");
             }
+            repo.add(Arrays.copyOfRange(args, 1, args.length));
         }
         if (args[0].equals("commit")) {
-            if (iHateStyleCheck(2, args)) {
-                Bloop.commit(args[1], null);
-            } else {
-                System.exit(0);
-            }
+            iHateStyleCheck(2, args);
+            repo.commit(args[1]);
         }
         if (args[0].equals("log")) {
-            if (iHateStyleCheck(1, args)) {
-                Bloop.log();
-            } else {
-                System.exit(0);
-            }
+            iHateStyleCheck(1, args);
+            printCommits(repo, out, repo.log());
         }
         if (args[0].equals("checkout")) {
             if (args.length == 2) {
-                Bloop.checkoutByBranch(args[1]);
-            } else if (args.length == 3) {
-                if (args[1].equals("--")) {
-                    Bloop.checkoutByFileName(args[2]);
-                } else {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
-                }
-            } else if (args.length == 4) {
-                if (args[2].equals("--")) {
-                    Bloop.checkoutByCommitID(args[1], args[3]);
-                    System.exit(0);
-                } else {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
-                }
+                repo.checkoutByBranch(args[1]);
+            } else if (args.length == 3 && args[1].equals("--")) {
+                repo.checkoutByFileName(args[2]);
+            } else if (args.length == 4 && args[2].equals("--")) {
+                repo.checkoutByCommitID(args[1], args[3]);
             } else {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw Utils.error("Incorrect operands.");
             }
         }
     }
 
-    public static void mainHelper2(String... args) throws IOException {
+    public static void mainHelper2(Repository repo, PrintStream out,
+                                   String... args) throws IOException {
         if (args[0].equals("rm")) {
-            if (iHateStyleCheck(2, args)) {
-                Bloop.rmCommand(args[1]);
-            } else {
-                System.exit(0);
-            }
+            iHateStyleCheck(2, args);
+            repo.rm(args[1]);
         }
         if (args[0].equals("global-log")) {
-            if (iHateStyleCheck(1, args)) {
-                Bloop.globalLog();
-            } else {
-                System.exit(0);
-            }
+            iHateStyleCheck(1, args);
+            printCommits(repo, out, repo.globalLog());
         }
         if (args[0].equals("find")) {
-            if (iHateStyleCheck(2, args)) {
-                Bloop.find(args[1]);
+            if (args.length == 3 && args[1].equals("--word")) {
+                printFound(out, repo.findWord(args[2]));
+            } else if (args.length == 3 && args[1].equals("--regex")) {
+                printFound(out, repo.findRegex(args[2]));
             } else {
-                System.exit(0);
+                iHateStyleCheck(2, args);
+                printFound(out, repo.find(args[1]));
             }
         }
         if (args[0].equals("status")) {
-            if (iHateStyleCheck(1, args)) {
-                Bloop.status();
-            } else {
-                System.exit(0);
-            }
+            iHateStyleCheck(1, args);
+            printStatus(out, repo.status());
         }
         if (args[0].equals("branch")) {
-            if (iHateStyleCheck(2, args)) {
-                Bloop.branchCommand(args[1]);
-            } else {
-                System.exit(0);
-            }
+            iHateStyleCheck(2, args);
+            repo.branch(args[1]);
         }
         if (args[0].equals("rm-branch")) {
-            if (iHateStyleCheck(2, args)) {
-                Bloop.rmBranch(args[1]);
-            }
-        } else {
-            System.exit(0);
+            iHateStyleCheck(2, args);
+            repo.rmBranch(args[1]);
         }
     }
 
-    public static void mainHelper3(String... args) throws IOException {
+    public static void mainHelper3(Repository repo, PrintStream out,
+                                   String... args) throws IOException {
         if (args[0].equals("reset")) {
-            if (iHateStyleCheck(2, args)) {
-                Bloop.reset(args[1]);
-            } else {
-                System.exit(0);
-            }
+            iHateStyleCheck(2, args);
+            repo.reset(args[1]);
         }
         if (args[0].equals("merge")) {
-            if (iHateStyleCheck(2, args)) {
-                Bloop.mergeCommand(args[1]);
-            } else {
-                System.exit(0);
+            iHateStyleCheck(2, args);
+            Repository.MergeResult result = repo.merge(args[1]);
+            if (result == Repository.MergeResult.FAST_FORWARD) {
+                out.println("Current branch fast-forwarded.");
+            } else if (result == Repository.MergeResult.CONFLICT) {
+                out.println("Encountered a merge conflict.");
+            }
+        }
+        if (args[0].equals("gc")) {
+            iHateStyleCheck(1, args);
+            out.println("Freed " + repo.gc() + " bytes.");
+        }
+        if (args[0].equals("daemon")) {
+            iHateStyleCheck(1, args);
+            Daemon.serve(repo);
+        }
+        if (args[0].equals("batch")) {
+            if (args.length > 2) {
+                throw Utils.error("Incorrect operands.");
             }
+            Batch.run(repo, out, args.length == 2 ? new File(args[1]) : null);
         }
     }
 
-    static boolean iHateStyleCheck(int length, String... args) {
-        if (args.length == length) {
-            return true;
+    /** Prints on OUT the log entries of the commits of REPO with ids
+     *  SHA1S. */
+    private static void printCommits(Repository repo, PrintStream out,
+                                     List<String> sha1s) {
+        for (String sha1 : sha1s) {
+            Commit commit = repo.getCommit(sha1);
+            out.println("===");
+            out.println("commit " + sha1);
+            out.println("Date: " + commit.getTimestamp());
+            out.println(commit.getMessage());
+            out.println();
+        }
+    }
+
+    /** Prints on OUT the commit ids FOUND, one per line, or throws an error
+     *  if there are none. */
+    private static void printFound(PrintStream out, List<String> found) {
+        if (found.isEmpty()) {
+            throw Utils.error("Found no commit with that message.");
+        }
+        for (String sha1 : found) {
+            out.println(sha1);
+        }
+    }
+
+    /** Prints STATUS on OUT. */
+    private static void printStatus(PrintStream out, Status status) {
+        out.println("=== Branches ===");
+        if (status.currentBranch() != null) {
+            out.println("*" + status.currentBranch());
+        }
+        printSection(out, status.otherBranches(), "");
+        out.println("=== Staged Files ===");
+        printSection(out, status.staged(), "");
+        out.println("=== Removed Files ===");
+        printSection(out, status.removed(), "");
+        out.println("=== Modifications Not Staged For Commit ===");
+        for (String deleted : status.deleted()) {
+            out.println(deleted + " (deleted)");
+        }
+        printSection(out, status.modified(), " (modified)");
+        out.println("=== Untracked Files ===");
+        printSection(out, status.untracked(), "");
+    }
+
+    /** Prints on OUT each of FILES followed by SUFFIX, one per line, then
+     *  a blank line. */
+    private static void printSection(PrintStream out, List<String> files,
+                                     String suffix) {
+        for (String file : files) {
+            out.println(file + suffix);
+        }
+        out.println();
+    }
+
+    /** Throws an error unless ARGS has LENGTH elements. */
+    static void iHateStyleCheck(int length, String... args) {
+        if (args.length != length) {
+            throw Utils.error("Incorrect operands.");
         }
-        System.out.println("Incorrect operands.");
-        return false;
     }
 
 
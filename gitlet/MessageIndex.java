@@ -0,0 +1,354 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static gitlet.Utils.*;
+
+/** An index of the messages of all commits, so that find need not read
+ *  the commits themselves.  The column file holds one record per commit,
+ *  appended as the commit is made: the commit's 20-byte sha1, the length
+ *  of its message and the message's UTF-8 bytes.  The index file is an
+ *  inverted index over the records at the start of the column: a table,
+ *  sorted by hash, of entries holding the 64-bit hash of a key and the
+ *  offset of a record with that key.  A record's keys are its whole
+ *  message and each distinct word of it.  Records appended since the
+ *  index was last brought up to date are scanned; once they take more
+ *  than TAIL_BYTES, add() merges their keys into the index.  A record
+ *  cut short by a crash while it was appended is ignored by readers, and
+ *  cut off by the next add(), so that the records after it line up.
+ */
+class MessageIndex {
+
+    /** Size of the unindexed end of the column past which add() updates
+     *  the index. */
+    static final int TAIL_BYTES = 16 << 10;
+
+    /** An index whose records are in COLUMN and whose inverted index is
+     *  in INDEX. */
+    MessageIndex(File column, File index) {
+        _column = column;
+        _index = index;
+    }
+
+    /** Records that commit ID has MESSAGE, first cutting off any torn
+     *  record at the end of the column.  An index that covers more than
+     *  the whole column is out of step with it, and is rebuilt. */
+    void add(String id, String message) {
+        try (FileChannel out = FileChannel.open(
+                 _column.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE)) {
+            ByteBuffer column = map(_column);
+            long indexed = indexedLength();
+            if (indexed > column.limit()) {
+                _index.delete();
+                indexed = 0;
+            }
+            int end = completeLength(column, (int) indexed);
+            out.truncate(end);
+            out.write(ByteBuffer.wrap(record(id, message)), end);
+        } catch (IOException excp) {
+            throw error("Could not write message index: %s",
+                        excp.getMessage());
+        }
+        if (_column.length() - indexedLength() > TAIL_BYTES) {
+            reindex();
+        }
+    }
+
+    /** Replaces the whole index with MESSAGES, a map of commit sha1s to
+     *  their messages. */
+    void rewrite(Map<String, String> messages) {
+        File temp = new File(_column.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            for (Map.Entry<String, String> entry : messages.entrySet()) {
+                out.write(record(entry.getKey(), entry.getValue()));
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw error("Could not write message index: %s",
+                        excp.getMessage());
+        }
+        _index.delete();
+        replace(temp, _column);
+        reindex();
+    }
+
+    /** Returns the sha1s of the commits whose message is MESSAGE, in
+     *  lexicographic order. */
+    List<String> withMessage(String message) {
+        return lookup(MESSAGE_KEY + message, message::equals);
+    }
+
+    /** Returns the sha1s of the commits whose message contains the word
+     *  WORD, ignoring case, in lexicographic order. */
+    List<String> withWord(String word) {
+        String key = word.toLowerCase(Locale.ROOT);
+        return lookup(WORD_KEY + key, message -> words(message).contains(key));
+    }
+
+    /** Returns the sha1s of the commits some part of whose message
+     *  matches PATTERN, in lexicographic order.  Every record is read,
+     *  but no commit is. */
+    List<String> matching(Pattern pattern) {
+        TreeSet<String> result = new TreeSet<>();
+        ByteBuffer column = map(_column);
+        int end = completeLength(column, 0);
+        for (int pos = 0; pos < end; pos = next(column, pos)) {
+            if (pattern.matcher(message(column, pos)).find()) {
+                result.add(id(column, pos));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the sha1s, in lexicographic order, of the records with KEY
+     *  whose messages satisfy MATCHES, which weeds out hash
+     *  collisions. */
+    private List<String> lookup(String key, Predicate<String> matches) {
+        TreeSet<String> result = new TreeSet<>();
+        ByteBuffer column = map(_column);
+        ByteBuffer index = map(_index);
+        int count = index.limit() == 0 ? 0 : index.getInt(COUNT_POS);
+        long hash = hash(key);
+        for (int k = lowerBound(index, count, hash);
+             k < count && index.getLong(entry(k)) == hash; k += 1) {
+            int pos = (int) index.getLong(entry(k) + Long.BYTES);
+            if (matches.test(message(column, pos))) {
+                result.add(id(column, pos));
+            }
+        }
+        int start = (int) Math.min(indexedLength(index), column.limit());
+        int end = completeLength(column, start);
+        for (int pos = start; pos < end; pos = next(column, pos)) {
+            if (matches.test(message(column, pos))) {
+                result.add(id(column, pos));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Merges the keys of the records past the end of the index into it,
+     *  so that the index covers the whole column. */
+    private void reindex() {
+        ByteBuffer column = map(_column);
+        ByteBuffer index = map(_index);
+        int oldCount = index.limit() == 0 ? 0 : index.getInt(COUNT_POS);
+        ArrayList<long[]> added = new ArrayList<>();
+        int end = completeLength(column, (int) indexedLength(index));
+        for (int pos = (int) indexedLength(index); pos < end;
+             pos = next(column, pos)) {
+            for (String key : keys(message(column, pos))) {
+                added.add(new long[] { hash(key), pos });
+            }
+        }
+        added.sort((a, b) -> Long.compare(a[0], b[0]));
+        int count = oldCount + added.size();
+        ByteBuffer result = ByteBuffer.allocate(HEADER_SIZE
+                                                + count * ENTRY_SIZE);
+        result.put(INDEX_MAGIC).put(INDEX_VERSION);
+        result.putLong(end).putInt(count);
+        int k = 0;
+        for (long[] entry : added) {
+            for (; k < oldCount && index.getLong(entry(k)) <= entry[0];
+                 k += 1) {
+                result.putLong(index.getLong(entry(k)));
+                result.putLong(index.getLong(entry(k) + Long.BYTES));
+            }
+            result.putLong(entry[0]).putLong(entry[1]);
+        }
+        for (; k < oldCount; k += 1) {
+            result.putLong(index.getLong(entry(k)));
+            result.putLong(index.getLong(entry(k) + Long.BYTES));
+        }
+        File temp = new File(_index.getPath() + ".tmp");
+        writeContents(temp, result.array());
+        replace(temp, _index);
+    }
+
+    /** Returns the number of bytes at the start of the column that the
+     *  index covers. */
+    private long indexedLength() {
+        return indexedLength(map(_index));
+    }
+
+    /** Returns the number of bytes of the column covered by INDEX. */
+    private long indexedLength(ByteBuffer index) {
+        if (index.limit() == 0) {
+            return 0;
+        }
+        byte[] magic = new byte[INDEX_MAGIC.length];
+        index.get(0, magic);
+        if (index.limit() < HEADER_SIZE || !Arrays.equals(magic, INDEX_MAGIC)
+            || index.get(magic.length) != INDEX_VERSION) {
+            throw error("Corrupt message index %s.", _index);
+        }
+        return index.getLong(magic.length + 1);
+    }
+
+    /** Returns the record for commit ID with MESSAGE. */
+    private static byte[] record(String id, String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer result = ByteBuffer.allocate(Codec.ID_BYTES
+                                                + Integer.BYTES
+                                                + text.length);
+        result.put(Codec.idToBytes(id)).putInt(text.length).put(text);
+        return result.array();
+    }
+
+    /** Returns the sha1 of the record at POS in COLUMN. */
+    private static String id(ByteBuffer column, int pos) {
+        byte[] id = new byte[Codec.ID_BYTES];
+        column.get(pos, id);
+        return Codec.bytesToId(id, 0);
+    }
+
+    /** Returns the message of the record at POS in COLUMN. */
+    private static String message(ByteBuffer column, int pos) {
+        byte[] text = new byte[column.getInt(pos + Codec.ID_BYTES)];
+        column.get(pos + Codec.ID_BYTES + Integer.BYTES, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the end of the last complete record of COLUMN, reading the
+     *  records from the one at START.  A record that runs past the end of
+     *  COLUMN was torn by a crash while it was appended. */
+    private static int completeLength(ByteBuffer column, int start) {
+        int pos = start;
+        while (column.limit() - pos >= Codec.ID_BYTES + Integer.BYTES) {
+            int len = column.getInt(pos + Codec.ID_BYTES);
+            if (len < 0 || column.limit() - pos - Codec.ID_BYTES
+                - Integer.BYTES < len) {
+                break;
+            }
+            pos = next(column, pos);
+        }
+        return pos;
+    }
+
+    /** Returns the position of the record after the one at POS in
+     *  COLUMN. */
+    private static int next(ByteBuffer column, int pos) {
+        return pos + Codec.ID_BYTES + Integer.BYTES
+            + column.getInt(pos + Codec.ID_BYTES);
+    }
+
+    /** Returns the keys under which a record with MESSAGE is indexed. */
+    private static Set<String> keys(String message) {
+        HashSet<String> result = new HashSet<>();
+        result.add(MESSAGE_KEY + message);
+        for (String word : words(message)) {
+            result.add(WORD_KEY + word);
+        }
+        return result;
+    }
+
+    /** Returns the distinct words of MESSAGE: its runs of letters and
+     *  digits, in lower case. */
+    private static Set<String> words(String message) {
+        HashSet<String> result = new HashSet<>();
+        for (String word : message.toLowerCase(Locale.ROOT)
+                 .split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of the UTF-8 bytes of KEY. */
+    private static long hash(String key) {
+        long result = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            result = (result ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return result;
+    }
+
+    /** Returns the position in an index of entry K. */
+    private static int entry(int k) {
+        return HEADER_SIZE + k * ENTRY_SIZE;
+    }
+
+    /** Returns the first of the COUNT entries of INDEX whose hash is not
+     *  less than HASH. */
+    private static int lowerBound(ByteBuffer index, int count, long hash) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.getLong(entry(mid)) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns FILE mapped read-only, or an empty buffer if there is no
+     *  FILE. */
+    private static ByteBuffer map(File file) {
+        if (!file.isFile()) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("Could not read message index: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Renames TEMP to DEST, replacing it. */
+    private static void replace(File temp, File dest) {
+        try {
+            Files.move(temp.toPath(), dest.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Could not write message index: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Prefix of the key of a whole message. */
+    private static final String MESSAGE_KEY = "m";
+    /** Prefix of the key of a word. */
+    private static final String WORD_KEY = "w";
+
+    /** First bytes of an index file. */
+    private static final byte[] INDEX_MAGIC = {'G', 'M', 'I', 'X'};
+    /** Version of the index format. */
+    private static final byte INDEX_VERSION = 1;
+    /** Position in the index header of the entry count. */
+    private static final int COUNT_POS = INDEX_MAGIC.length + 1
+        + Long.BYTES;
+    /** Size of the index header: magic, version, length of the column
+     *  indexed and entry count. */
+    private static final int HEADER_SIZE = COUNT_POS + Integer.BYTES;
+    /** Size of an index entry: key hash and record offset. */
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+
+    /** The file of records. */
+    private final File _column;
+    /** The inverted index file. */
+    private final File _index;
+}
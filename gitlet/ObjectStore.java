@@ -0,0 +1,778 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/** A store of objects named by their sha1s.  New objects are written as
+ *  loose files in a folder, fanned out into subfolders named by the first
+ *  two hex digits of their sha1s, so that no one folder grows too large
+ *  and a prefix of two or more digits names a single subfolder.  pack()
+ *  moves them into a pack: an append-only data file holding the objects
+ *  back to back, and an index holding one entry per object, sorted by
+ *  sha1, of the object's 20-byte sha1, its offset in the data file and
+ *  its length.  Both pack files are memory-mapped, so reading a packed
+ *  object is a binary search of the index and a copy out of the data
+ *  file.  Objects are stored deflated, behind a codec byte, and are
+ *  compressed and decompressed as streams.  repack() rewrites the pack to
+ *  drop the objects that are no longer needed.  Packs are numbered by
+ *  generation: the pack of generation G is NAME-G.pack and NAME-G.idx,
+ *  and the file NAME.current holds the generation in use.  repack()
+ *  writes the next generation beside the old one and then renames a new
+ *  NAME.current into place, so readers switch from the whole old pack to
+ *  the whole new one at once.  The first pack, until it is repacked, is
+ *  generation 0: NAME.pack and NAME.idx, with no NAME.current.
+ *  Several threads may read and write objects at once, but packing must
+ *  not run alongside them.
+ */
+class ObjectStore {
+
+    /** Number of loose objects after which packIfNeeded() packs them. */
+    static final int LOOSE_LIMIT = 2048;
+
+    /** Number of leading hex digits of a sha1 that name its subfolder. */
+    static final int FANOUT_DIGITS = 2;
+
+    /** The subfolder that packIfNeeded() counts to estimate the number of
+     *  loose objects, which spread evenly over all 256 subfolders. */
+    static final String SAMPLE_SHARD = "17";
+
+    /** Codec byte of an object stored deflated.  It is followed by the
+     *  eight-byte length of the object and then the deflated object.
+     *  Objects written before compression have no codec byte; they start
+     *  with the type byte of their contents, which is never DEFLATED. */
+    static final int DEFLATED = 'z';
+
+    /** Size of the buffers used to stream objects. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A store whose loose objects are in LOOSEFOLDER and whose pack files
+     *  are NAME.pack and NAME.idx in PACKFOLDER. */
+    ObjectStore(File looseFolder, File packFolder, String name) {
+        _looseFolder = looseFolder;
+        _packFolder = packFolder;
+        _name = name;
+        _currentFile = join(packFolder, name + ".current");
+    }
+
+    /** Returns the contents of the object ID. */
+    byte[] read(String id) {
+        try (ObjectStream in = open(id)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw error("Object %s is too large to read whole.", id);
+            }
+            byte[] result = new byte[(int) in.size()];
+            in.readNBytes(result, 0, result.length);
+            return result;
+        } catch (IOException excp) {
+            throw error("Could not read object %s: %s", id,
+                        excp.getMessage());
+        }
+    }
+
+    /** Returns a stream of the contents of the object ID, which the caller
+     *  must close. */
+    ObjectStream open(String id) {
+        InputStream stored;
+        long storedSize;
+        int k = findPacked(Codec.idToBytes(id));
+        try {
+            if (k >= 0) {
+                int pos = HEADER_SIZE + k * ENTRY_SIZE + Codec.ID_BYTES;
+                storedSize = index().getInt(pos + Long.BYTES);
+                stored = openPacked(index().getLong(pos), (int) storedSize);
+            } else {
+                File loose = looseFile(id);
+                if (!loose.isFile()) {
+                    throw error("No object with id %s.", id);
+                }
+                storedSize = loose.length();
+                stored = new BufferedInputStream(new FileInputStream(loose),
+                                                 BUFFER_SIZE);
+            }
+            int codec = stored.read();
+            if (codec == DEFLATED) {
+                long size = new DataInputStream(stored).readLong();
+                return new ObjectStream(
+                    new InflaterInputStream(stored), size);
+            }
+            PushbackInputStream raw = new PushbackInputStream(stored);
+            if (codec >= 0) {
+                raw.unread(codec);
+            }
+            return new ObjectStream(raw, storedSize);
+        } catch (IOException excp) {
+            throw error("Could not read object %s: %s", id,
+                        excp.getMessage());
+        }
+    }
+
+    /** Returns true iff there is an object ID. */
+    boolean contains(String id) {
+        return findPacked(Codec.idToBytes(id)) >= 0
+            || looseFile(id).isFile();
+    }
+
+    /** Saves the concatenation of PARTS as the object ID, unless it is
+     *  already stored.  The object is deflated into a temporary file that
+     *  is then renamed, so a partly written object is never visible. */
+    void write(String id, byte[]... parts) {
+        if (contains(id)) {
+            return;
+        }
+        long size = 0;
+        for (byte[] part : parts) {
+            size += part.length;
+        }
+        File temp = tempFile();
+        try {
+            deflate(temp, size, parts, null, null);
+            moveIntoPlace(temp, id);
+        } catch (IOException excp) {
+            temp.delete();
+            throw error("Could not write object %s: %s", id,
+                        excp.getMessage());
+        }
+    }
+
+    /** Saves HEADER followed by the SIZE bytes of IN as an object, unless
+     *  it is already stored, and returns the sha1 of the bytes of IN,
+     *  which names the object.  The bytes are hashed as they are copied,
+     *  a buffer at a time, so no more than a buffer of them is ever in
+     *  memory. */
+    String write(byte[] header, InputStream in, long size) {
+        File temp = tempFile();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            deflate(temp, header.length + size, new byte[][] { header },
+                    in, digest);
+            String id = Codec.bytesToId(digest.digest(), 0);
+            if (contains(id)) {
+                temp.delete();
+            } else {
+                moveIntoPlace(temp, id);
+            }
+            return id;
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            temp.delete();
+            throw error("Could not write object: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns a new, empty temporary file in the loose folder, outside
+     *  the subfolders. */
+    private File tempFile() {
+        try {
+            _looseFolder.mkdirs();
+            return File.createTempFile("tmp_", null, _looseFolder);
+        } catch (IOException excp) {
+            throw error("Could not create object: %s", excp.getMessage());
+        }
+    }
+
+    /** Writes to TEMP the codec byte and SIZE, and then deflates into it
+     *  the bytes of PARTS followed by those of IN, if not null.  The bytes
+     *  of IN are also passed to DIGEST.  Throws an error if PARTS and IN
+     *  do not hold exactly SIZE bytes. */
+    private static void deflate(File temp, long size, byte[][] parts,
+                                InputStream in, MessageDigest digest)
+        throws IOException {
+        long copied = 0;
+        try (OutputStream file = new BufferedOutputStream(
+                 Files.newOutputStream(temp.toPath()), BUFFER_SIZE);
+             DeflaterOutputStream out = new DeflaterOutputStream(file)) {
+            file.write(DEFLATED);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                file.write((int) (size >>> shift));
+            }
+            for (byte[] part : parts) {
+                out.write(part);
+                copied += part.length;
+            }
+            if (in != null) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    digest.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                    copied += n;
+                }
+            }
+        }
+        if (copied != size) {
+            throw new IOException("contents changed while being read");
+        }
+    }
+
+    /** Renames TEMP to be the loose object ID. */
+    private void moveIntoPlace(File temp, String id) throws IOException {
+        File loose = looseFile(id);
+        loose.getParentFile().mkdir();
+        Files.move(temp.toPath(), loose.toPath(),
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Returns the sha1s of all objects, in lexicographic order. */
+    List<String> ids() {
+        return idsWithPrefix("");
+    }
+
+    /** Returns the sha1s of all objects that start with PREFIX, in
+     *  lexicographic order. */
+    List<String> idsWithPrefix(String prefix) {
+        return idsWithPrefix(prefix, Integer.MAX_VALUE);
+    }
+
+    /** Returns the first LIMIT sha1s, in lexicographic order, of the
+     *  objects that start with PREFIX.  Only the one subfolder that PREFIX
+     *  names is listed, and the pack index is binary searched for the
+     *  first match and read no further than LIMIT matches, so asking
+     *  whether a prefix is unique, with a LIMIT of 2, takes time
+     *  logarithmic in the number of packed objects. */
+    List<String> idsWithPrefix(String prefix, int limit) {
+        if (!prefix.matches("[0-9a-f]{0,40}")) {
+            return new ArrayList<>();
+        }
+        TreeSet<String> matches = new TreeSet<>(looseIds(prefix));
+        ByteBuffer index = index();
+        byte[] id = new byte[Codec.ID_BYTES];
+        int packed = 0;
+        for (int k = lowerBound(Codec.idToBytes(padId(prefix)));
+             k < _packCount && packed < limit; k += 1, packed += 1) {
+            index.get(HEADER_SIZE + k * ENTRY_SIZE, id);
+            String hex = Codec.bytesToId(id, 0);
+            if (!hex.startsWith(prefix)) {
+                break;
+            }
+            matches.add(hex);
+        }
+        List<String> result = new ArrayList<>();
+        for (String match : matches) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(match);
+        }
+        return result;
+    }
+
+    /** Packs the loose objects if there seem to be more than
+     *  LOOSE_LIMIT, judging from the size of one subfolder. */
+    void packIfNeeded() {
+        String[] sample = join(_looseFolder, SAMPLE_SHARD).list();
+        if (sample != null && sample.length * 256 > LOOSE_LIMIT) {
+            pack();
+        }
+    }
+
+    /** Appends all loose objects to the data file, rewrites the index to
+     *  include them and deletes the loose files.  Objects too large for an
+     *  index entry stay loose.  The old index covers only the start of the
+     *  data file, and the index is replaced by a rename, so a failure part
+     *  way leaves the old pack, and the loose files, usable. */
+    void pack() {
+        List<String> loose = looseIds("");
+        if (loose.isEmpty()) {
+            return;
+        }
+        _packFolder.mkdirs();
+        ByteBuffer oldIndex = index();
+        int generation = _generation;
+        int total = _packCount + loose.size();
+        byte[] entries = new byte[total * ENTRY_SIZE];
+        oldIndex.get(HEADER_SIZE, entries, 0, _packCount * ENTRY_SIZE);
+        int n = _packCount;
+        ArrayList<String> packed = new ArrayList<>();
+        try (RandomAccessFile data =
+             new RandomAccessFile(dataFile(generation), "rw")) {
+            long offset = data.length();
+            data.seek(offset);
+            for (String id : loose) {
+                File file = looseFile(id);
+                long length = file.length();
+                if (findPacked(Codec.idToBytes(id)) < 0) {
+                    if (length > Integer.MAX_VALUE) {
+                        continue;
+                    }
+                    try (FileChannel src = FileChannel.open(file.toPath())) {
+                        transfer(src, 0, length, data.getChannel());
+                    }
+                    ByteBuffer entry =
+                        ByteBuffer.wrap(entries, n * ENTRY_SIZE, ENTRY_SIZE);
+                    entry.put(Codec.idToBytes(id));
+                    entry.putLong(offset);
+                    entry.putInt((int) length);
+                    offset += length;
+                    n += 1;
+                }
+                packed.add(id);
+            }
+            data.getFD().sync();
+        } catch (IOException excp) {
+            throw error("Could not write pack: %s", excp.getMessage());
+        }
+        writeIndex(sortEntries(entries, n), n, generation);
+        reload();
+        for (String id : packed) {
+            looseFile(id).delete();
+        }
+    }
+
+    /** Rewrites the pack to hold just the objects KEEP, all of which must
+     *  be stored, deletes every other object, and returns the number of
+     *  bytes freed: the stored size of the objects deleted.  The objects
+     *  are copied, still deflated, from the old pack and the loose files
+     *  into a new data file, so the time taken depends on KEEP and the
+     *  loose objects, not on the old pack.  Kept objects too large for an
+     *  index entry stay loose.  The new pack is the next generation, so
+     *  the old pack stays whole and in use until the switch to the new
+     *  one; only then are the old pack and the loose files deleted. */
+    long repack(Collection<String> keep) {
+        long freed = droppedSize(new HashSet<>(keep));
+        List<String> ids = new ArrayList<>(keep);
+        ids.sort(null);
+        _packFolder.mkdirs();
+        ByteBuffer index = index();
+        File oldPack = _dataFile;
+        int generation = _generation + 1;
+        File newPack = dataFile(generation);
+        byte[] entries = new byte[ids.size() * ENTRY_SIZE];
+        int n = 0;
+        HashSet<String> stayLoose = new HashSet<>();
+        try (FileChannel out = FileChannel.open(
+                 newPack.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel oldData = _packCount == 0 ? null
+                 : FileChannel.open(oldPack.toPath())) {
+            long offset = 0;
+            for (String id : ids) {
+                byte[] binaryId = Codec.idToBytes(id);
+                int k = findPacked(binaryId);
+                long length;
+                if (k >= 0) {
+                    int pos = HEADER_SIZE + k * ENTRY_SIZE + Codec.ID_BYTES;
+                    length = index.getInt(pos + Long.BYTES);
+                    transfer(oldData, index.getLong(pos), length, out);
+                } else {
+                    File file = looseFile(id);
+                    length = file.length();
+                    if (length > Integer.MAX_VALUE) {
+                        stayLoose.add(id);
+                        continue;
+                    }
+                    try (FileChannel src = FileChannel.open(file.toPath())) {
+                        transfer(src, 0, length, out);
+                    }
+                }
+                ByteBuffer entry =
+                    ByteBuffer.wrap(entries, n * ENTRY_SIZE, ENTRY_SIZE);
+                entry.put(binaryId);
+                entry.putLong(offset);
+                entry.putInt((int) length);
+                offset += length;
+                n += 1;
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            newPack.delete();
+            throw error("Could not write pack: %s", excp.getMessage());
+        }
+        writeIndex(entries, n, generation);
+        File temp = join(_packFolder, _currentFile.getName() + ".tmp");
+        writeContents(temp, generation + "\n");
+        try {
+            Files.move(temp.toPath(), _currentFile.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Could not write pack: %s", excp.getMessage());
+        }
+        reload();
+        deleteOtherPacks(generation);
+        for (String id : looseIds("")) {
+            if (!stayLoose.contains(id)) {
+                looseFile(id).delete();
+                looseFile(id).getParentFile().delete();
+            }
+        }
+        return freed;
+    }
+
+    /** Copies the LENGTH bytes at OFFSET in SRC to the end of DEST. */
+    private static void transfer(FileChannel src, long offset, long length,
+                                 FileChannel dest) throws IOException {
+        for (long done = 0; done < length;) {
+            done += src.transferTo(offset + done, length - done, dest);
+        }
+    }
+
+    /** Returns the total stored size of the objects that repack would
+     *  delete, given that it keeps just KEEP: those not in KEEP, and loose
+     *  copies of packed objects.  The pack index's own size is left out,
+     *  so that dropping nothing frees nothing. */
+    private long droppedSize(Set<String> keep) {
+        ByteBuffer index = index();
+        byte[] id = new byte[Codec.ID_BYTES];
+        long result = 0;
+        for (int k = 0; k < _packCount; k += 1) {
+            int pos = HEADER_SIZE + k * ENTRY_SIZE;
+            index.get(pos, id);
+            if (!keep.contains(Codec.bytesToId(id, 0))) {
+                result += index.getInt(pos + Codec.ID_BYTES + Long.BYTES);
+            }
+        }
+        for (String loose : looseIds("")) {
+            if (!keep.contains(loose)
+                || findPacked(Codec.idToBytes(loose)) >= 0) {
+                result += looseFile(loose).length();
+            }
+        }
+        return result;
+    }
+
+    /** Returns the first N entries of ENTRIES, sorted by sha1. */
+    private static byte[] sortEntries(byte[] entries, int n) {
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k += 1) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) ->
+                    Arrays.compareUnsigned(entries, a * ENTRY_SIZE,
+                                           a * ENTRY_SIZE + Codec.ID_BYTES,
+                                           entries, b * ENTRY_SIZE,
+                                           b * ENTRY_SIZE + Codec.ID_BYTES));
+        byte[] result = new byte[n * ENTRY_SIZE];
+        for (int k = 0; k < n; k += 1) {
+            System.arraycopy(entries, order[k] * ENTRY_SIZE,
+                             result, k * ENTRY_SIZE, ENTRY_SIZE);
+        }
+        return result;
+    }
+
+    /** Replaces the index of GENERATION with the N sorted ENTRIES. */
+    private void writeIndex(byte[] entries, int n, int generation) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(INDEX_MAGIC).put(INDEX_VERSION).putInt(n);
+        File index = indexFile(generation);
+        File temp = join(_packFolder, index.getName() + ".tmp");
+        writeContents(temp, header.array(), entries);
+        try {
+            Files.move(temp.toPath(), index.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Could not write pack index: %s", excp.getMessage());
+        }
+    }
+
+    /** Deletes the pack files of every generation but GENERATION: the
+     *  pack it replaced, and any left by a repack that did not finish. */
+    private void deleteOtherPacks(int generation) {
+        File[] files = _packFolder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.matches(Pattern.quote(_name) + "(-[0-9]+)?\\.(pack|idx)")
+                && !name.equals(dataFile(generation).getName())
+                && !name.equals(indexFile(generation).getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Returns the file holding loose object ID. */
+    private File looseFile(String id) {
+        return join(_looseFolder, id.substring(0, FANOUT_DIGITS),
+                    id.substring(FANOUT_DIGITS));
+    }
+
+    /** Returns the sha1s of the loose objects that start with PREFIX. */
+    private List<String> looseIds(String prefix) {
+        ArrayList<String> result = new ArrayList<>();
+        if (prefix.length() >= FANOUT_DIGITS) {
+            looseIds(prefix.substring(0, FANOUT_DIGITS), prefix, result);
+        } else {
+            String[] shards = _looseFolder.list();
+            if (shards != null) {
+                for (String shard : shards) {
+                    if (shard.length() == FANOUT_DIGITS
+                        && shard.startsWith(prefix)) {
+                        looseIds(shard, prefix, result);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Adds to RESULT the sha1s of the loose objects in subfolder SHARD
+     *  that start with PREFIX. */
+    private void looseIds(String shard, String prefix,
+                          List<String> result) {
+        String[] names = join(_looseFolder, shard).list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            String id = shard + name;
+            if (id.length() == UID_LENGTH && id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+    }
+
+    /** Returns PREFIX padded with zeros to the length of a sha1. */
+    private static String padId(String prefix) {
+        StringBuilder result = new StringBuilder(prefix);
+        while (result.length() < UID_LENGTH) {
+            result.append('0');
+        }
+        return result.toString();
+    }
+
+    /** Returns the position in the index of the entry for the 20-byte
+     *  sha1 ID, or -1 if it is not packed. */
+    private int findPacked(byte[] id) {
+        int k = lowerBound(id);
+        if (k < _packCount
+            && compareId(index(), HEADER_SIZE + k * ENTRY_SIZE, id) == 0) {
+            return k;
+        }
+        return -1;
+    }
+
+    /** Returns the position in the index of the first entry whose sha1 is
+     *  not less than the 20-byte ID. */
+    private int lowerBound(byte[] id) {
+        ByteBuffer index = index();
+        int lo = 0, hi = _packCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareId(index, HEADER_SIZE + mid * ENTRY_SIZE, id) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Compares the sha1 at POS in INDEX with the 20-byte ID, as unsigned
+     *  bytes. */
+    private static int compareId(ByteBuffer index, int pos, byte[] id) {
+        for (int i = 0; i < id.length; i += 1) {
+            int c = Integer.compare(index.get(pos + i) & 0xff, id[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns a stream of the LENGTH stored bytes at OFFSET in the data
+     *  file, read from the mapped data file where it reaches. */
+    private InputStream openPacked(long offset, int length)
+        throws IOException {
+        MappedByteBuffer mapped = data();
+        if (mapped.capacity() >= offset + length) {
+            ByteBuffer slice = mapped.duplicate();
+            slice.position((int) offset).limit((int) offset + length);
+            return new BufferInputStream(slice);
+        }
+        byte[] result = new byte[length];
+        try (RandomAccessFile data = new RandomAccessFile(dataFile(), "r")) {
+            data.seek(offset);
+            data.readFully(result);
+        }
+        return new ByteArrayInputStream(result);
+    }
+
+    /** Forgets the mapped pack files, so that they are mapped again. */
+    synchronized void reload() {
+        _index = null;
+        _data = null;
+    }
+
+    /** Returns the current data file, mapped when the index was. */
+    private synchronized MappedByteBuffer data() {
+        index();
+        return _data;
+    }
+
+    /** Returns the current data file. */
+    private synchronized File dataFile() {
+        index();
+        return _dataFile;
+    }
+
+    /** Returns the data file of GENERATION. */
+    private File dataFile(int generation) {
+        return join(_packFolder, packName(generation) + ".pack");
+    }
+
+    /** Returns the index file of GENERATION. */
+    private File indexFile(int generation) {
+        return join(_packFolder, packName(generation) + ".idx");
+    }
+
+    /** Returns the name, without extension, of the pack files of
+     *  GENERATION. */
+    private String packName(int generation) {
+        return generation == 0 ? _name : _name + "-" + generation;
+    }
+
+    /** Returns the mapped index of the current generation, mapping it,
+     *  and its data file, if need be.  Both are mapped together, so that
+     *  they always belong to the same pack.  An empty buffer stands for a
+     *  store with no pack. */
+    private synchronized ByteBuffer index() {
+        if (_index == null) {
+            _packCount = 0;
+            _generation = 0;
+            _data = null;
+            ByteBuffer index = ByteBuffer.allocate(HEADER_SIZE);
+            try {
+                if (_currentFile.isFile()) {
+                    _generation = Integer.parseInt(
+                        readContentsAsString(_currentFile).trim());
+                }
+                _indexFile = indexFile(_generation);
+                _dataFile = dataFile(_generation);
+                if (_indexFile.isFile()) {
+                    index = map(_indexFile);
+                    byte[] magic = new byte[INDEX_MAGIC.length];
+                    index.get(0, magic);
+                    if (!Arrays.equals(magic, INDEX_MAGIC)
+                        || index.get(magic.length) != INDEX_VERSION) {
+                        throw error("Corrupt pack index %s.", _indexFile);
+                    }
+                    _packCount = index.getInt(magic.length + 1);
+                }
+                if (_packCount > 0) {
+                    _data = map(_dataFile);
+                }
+            } catch (IOException | NumberFormatException excp) {
+                throw error("Could not read pack index: %s",
+                            excp.getMessage());
+            }
+            _index = index;
+        }
+        return _index;
+    }
+
+    /** Returns FILE mapped read-only, or as much of it as fits in one
+     *  buffer. */
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               Math.min(channel.size(), Integer.MAX_VALUE));
+        }
+    }
+
+    /** The contents of one object, as a stream whose length is known. */
+    static class ObjectStream extends FilterInputStream {
+
+        /** A stream of the SIZE bytes of IN. */
+        ObjectStream(InputStream in, long size) {
+            super(in);
+            _size = size;
+        }
+
+        /** Returns the length of the object. */
+        long size() {
+            return _size;
+        }
+
+        /** The length of the object. */
+        private final long _size;
+    }
+
+    /** A stream of the remaining bytes of a buffer. */
+    private static class BufferInputStream extends InputStream {
+
+        /** A stream of the remaining bytes of BUF. */
+        BufferInputStream(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return _buf.hasRemaining() ? _buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!_buf.hasRemaining()) {
+                return len == 0 ? 0 : -1;
+            }
+            len = Math.min(len, _buf.remaining());
+            _buf.get(b, off, len);
+            return len;
+        }
+
+        /** The bytes not yet read. */
+        private final ByteBuffer _buf;
+    }
+
+    /** First bytes of an index file. */
+    private static final byte[] INDEX_MAGIC = {'G', 'I', 'D', 'X'};
+    /** Version of the index format. */
+    private static final byte INDEX_VERSION = 1;
+    /** Size of the index header: magic, version and entry count. */
+    private static final int HEADER_SIZE = INDEX_MAGIC.length + 1
+        + Integer.BYTES;
+    /** Size of an index entry: sha1, offset and length. */
+    private static final int ENTRY_SIZE = Codec.ID_BYTES + Long.BYTES
+        + Integer.BYTES;
+
+    /** Folder holding the loose objects. */
+    private final File _looseFolder;
+    /** Folder holding the pack files. */
+    private final File _packFolder;
+    /** The prefix of the names of the pack files. */
+    private final String _name;
+    /** The file holding the current generation. */
+    private final File _currentFile;
+    /** The index file of the current generation. */
+    private File _indexFile;
+    /** The mapped index, or null if not yet mapped. */
+    private ByteBuffer _index;
+    /** The data file of the current generation. */
+    private File _dataFile;
+    /** The mapped data file, or null if not yet mapped or empty. */
+    private MappedByteBuffer _data;
+    /** The current generation. */
+    private int _generation;
+    /** Number of entries in the index. */
+    private int _packCount;
+}
@@ -0,0 +1,352 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** The branches of a repository and its HEAD.  A branch is either a loose
+ *  file in the heads folder, named after the branch and holding the sha1
+ *  of its head commit, or a line of the packed-refs file, which holds any
+ *  number of branches so that they need not each have a file.  A loose
+ *  file overrides a packed line for the same branch.  The HEAD file is
+ *  symbolic, "ref: NAME", naming the current branch, or else holds the
+ *  sha1 of the head commit when no branch is current.  So a commit
+ *  rewrites only the file of the current branch, however many branches
+ *  there are.  Every file is replaced by writing its new contents to a
+ *  lock file beside it, which must not already exist, and renaming that
+ *  over it: a ref is never seen half written, and two commands cannot
+ *  change the same ref at once.  Each ref is read at most once per
+ *  command; a command that moves a branch or HEAD it has read passes the
+ *  value it read, which is checked again under the lock.
+ */
+class RefStore {
+
+    /** A store whose HEAD is HEADFILE, whose loose branches are in
+     *  HEADSFOLDER and whose packed branches are in PACKEDFILE. */
+    RefStore(File headFile, File headsFolder, File packedFile) {
+        _headFile = headFile;
+        _headsFolder = headsFolder;
+        _packedFile = packedFile;
+    }
+
+    /** Returns the sha1 of the head commit. */
+    String head() {
+        String branch = currentBranch();
+        if (branch == null) {
+            return headContents();
+        }
+        String result = branch(branch);
+        if (result == null) {
+            throw error("HEAD names missing branch %s.", branch);
+        }
+        return result;
+    }
+
+    /** Returns the name of the current branch, or null if there is
+     *  none. */
+    String currentBranch() {
+        String head = headContents();
+        return head.startsWith(SYMBOLIC) ? head.substring(SYMBOLIC.length())
+            : null;
+    }
+
+    /** Returns the sha1 of the head of branch NAME, or null if there is no
+     *  such branch. */
+    String branch(String name) {
+        if (!_loose.containsKey(name)) {
+            File file = join(_headsFolder, fileName(name));
+            _loose.put(name, file.isFile()
+                       ? readContentsAsString(file).trim() : null);
+        }
+        String result = _loose.get(name);
+        return result != null ? result : packed().get(name);
+    }
+
+    /** Returns all branches, mapping their names to the sha1s of their
+     *  heads. */
+    TreeMap<String, String> branches() {
+        TreeMap<String, String> result = new TreeMap<>(packed());
+        String[] files = _headsFolder.list();
+        if (files != null) {
+            for (String file : files) {
+                if (!file.endsWith(LOCK)) {
+                    String name = branchName(file);
+                    String sha1 = branch(name);
+                    if (sha1 != null) {
+                        result.put(name, sha1);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Makes SHA1 the head of branch NAME, creating it if need be. */
+    void setBranch(String name, String sha1) {
+        _headsFolder.mkdirs();
+        replace(join(_headsFolder, fileName(name)), sha1 + "\n");
+        _loose.put(name, sha1);
+    }
+
+    /** Makes SHA1 the head of branch NAME, provided that its head is
+     *  still OLD, or that there is no such branch if OLD is null.  The
+     *  branch is read again from its files while its lock is held, so a
+     *  command that moved it since this one read it is not overwritten. */
+    void setBranch(String name, String old, String sha1) {
+        _headsFolder.mkdirs();
+        File file = join(_headsFolder, fileName(name));
+        File lock = lock(file);
+        String current = file.isFile() ? readContentsAsString(file).trim()
+            : readPacked().get(name);
+        if (!Objects.equals(old, current)) {
+            lock.delete();
+            throw error("Branch %s has moved; another gitlet command may "
+                        + "have run.", name);
+        }
+        write(lock, file, sha1 + "\n");
+        _loose.put(name, sha1);
+    }
+
+    /** Deletes branch NAME. */
+    void removeBranch(String name) {
+        File file = join(_headsFolder, fileName(name));
+        File lock = lock(file);
+        file.delete();
+        lock.delete();
+        _loose.put(name, null);
+        if (packed().containsKey(name)) {
+            TreeMap<String, String> packed = new TreeMap<>(packed());
+            packed.remove(name);
+            writePacked(packed);
+        }
+    }
+
+    /** Makes NAME the current branch. */
+    void setCurrentBranch(String name) {
+        replace(_headFile, SYMBOLIC + name + "\n");
+        _head = SYMBOLIC + name;
+    }
+
+    /** Makes SHA1 the head commit, moving the current branch to it if
+     *  there is one. */
+    void moveHead(String sha1) {
+        String branch = currentBranch();
+        if (branch != null) {
+            setBranch(branch, sha1);
+        } else {
+            replace(_headFile, sha1 + "\n");
+            _head = sha1;
+        }
+    }
+
+    /** Makes SHA1 the head commit, as moveHead(SHA1) does, provided that
+     *  the head commit is still OLD, checked as setBranch(NAME, OLD, SHA1)
+     *  checks it. */
+    void moveHead(String old, String sha1) {
+        String branch = currentBranch();
+        if (branch != null) {
+            setBranch(branch, old, sha1);
+        } else {
+            File lock = lock(_headFile);
+            if (!readContentsAsString(_headFile).trim().equals(old)) {
+                lock.delete();
+                throw error("HEAD has moved; another gitlet command may "
+                            + "have run.");
+            }
+            write(lock, _headFile, sha1 + "\n");
+            _head = sha1;
+        }
+    }
+
+    /** Moves all loose branches into the packed-refs file.  Each loose
+     *  branch is locked, and read again, before the packed-refs file is
+     *  written, and stays locked until its file is deleted, so that no
+     *  command can move it in between and have its change lost. */
+    void pack() {
+        ArrayList<File> locks = new ArrayList<>();
+        try {
+            TreeMap<String, String> branches = readPacked();
+            String[] files = _headsFolder.list();
+            if (files != null) {
+                for (String name : files) {
+                    if (!name.endsWith(LOCK)) {
+                        File file = join(_headsFolder, name);
+                        locks.add(lock(file));
+                        if (file.isFile()) {
+                            branches.put(branchName(name),
+                                         readContentsAsString(file).trim());
+                        }
+                    }
+                }
+            }
+            writePacked(branches);
+            for (File lock : locks) {
+                String path = lock.getPath();
+                new File(path.substring(0, path.length() - LOCK.length()))
+                    .delete();
+            }
+            _loose.clear();
+        } finally {
+            for (File lock : locks) {
+                lock.delete();
+            }
+        }
+    }
+
+    /** Forgets the refs read so far, so that they are read again. */
+    void reload() {
+        _head = null;
+        _loose.clear();
+        _packed = null;
+    }
+
+    /** Returns the contents of the HEAD file, without its newline. */
+    private String headContents() {
+        if (_head == null) {
+            _head = readContentsAsString(_headFile).trim();
+        }
+        return _head;
+    }
+
+    /** Returns the packed branches, reading them if need be. */
+    private TreeMap<String, String> packed() {
+        if (_packed == null) {
+            _packed = readPacked();
+        }
+        return _packed;
+    }
+
+    /** Returns the packed branches as the packed-refs file now holds
+     *  them. */
+    private TreeMap<String, String> readPacked() {
+        TreeMap<String, String> result = new TreeMap<>();
+        if (_packedFile.isFile()) {
+            for (String line
+                     : readContentsAsString(_packedFile).split("\n")) {
+                int space = line.indexOf(' ');
+                if (!line.startsWith("#") && space > 0) {
+                    result.put(branchName(line.substring(space + 1)),
+                               line.substring(0, space));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Replaces the packed-refs file with BRANCHES. */
+    private void writePacked(TreeMap<String, String> branches) {
+        StringBuilder contents = new StringBuilder(PACKED_HEADER);
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            contents.append(branch.getValue()).append(' ')
+                .append(fileName(branch.getKey())).append('\n');
+        }
+        replace(_packedFile, contents.toString());
+        _packed = new TreeMap<>(branches);
+    }
+
+    /** Replaces the contents of FILE with CONTENTS, by way of its lock
+     *  file. */
+    private static void replace(File file, String contents) {
+        write(lock(file), file, contents);
+    }
+
+    /** Writes CONTENTS to LOCK, the lock file of FILE, which this command
+     *  holds, and renames it over FILE. */
+    private static void write(File lock, File file, String contents) {
+        try {
+            Files.write(lock.toPath(),
+                        contents.getBytes(StandardCharsets.UTF_8));
+            Files.move(lock.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            lock.delete();
+            throw error("Could not write %s: %s", file.getName(),
+                        excp.getMessage());
+        }
+    }
+
+    /** Creates and returns the lock file of FILE, or throws an error if
+     *  another command holds it. */
+    private static File lock(File file) {
+        File lock = new File(file.getPath() + LOCK);
+        try {
+            Files.write(lock.toPath(), new byte[0],
+                        StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException excp) {
+            throw error("Could not lock %s; another gitlet command may be "
+                        + "running.", file.getName());
+        } catch (IOException excp) {
+            throw error("Could not lock %s: %s", file.getName(),
+                        excp.getMessage());
+        }
+        return lock;
+    }
+
+    /** Returns the name of the file for branch NAME: NAME with every byte
+     *  of its UTF-8 form other than a letter, digit, '-' or '_' written as
+     *  '%' and two hex digits.  So no name can reach outside the heads
+     *  folder or end in LOCK. */
+    private static String fileName(String name) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9') || c == '-' || c == '_') {
+                result.append(c);
+            } else {
+                result.append(String.format("%%%02x", b & 0xff));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Returns the branch name whose file name is FILE. */
+    private static String branchName(String file) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (int i = 0; i < file.length(); i += 1) {
+            char c = file.charAt(i);
+            if (c == '%' && i + 2 < file.length()) {
+                result.write(Integer.parseInt(file.substring(i + 1, i + 3),
+                                              16));
+                i += 2;
+            } else {
+                result.write(c);
+            }
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Start of a symbolic HEAD. */
+    private static final String SYMBOLIC = "ref: ";
+    /** Suffix of a lock file. */
+    private static final String LOCK = ".lock";
+    /** First line of the packed-refs file. */
+    private static final String PACKED_HEADER = "# gitlet packed-refs\n";
+
+    /** The HEAD file. */
+    private final File _headFile;
+    /** The folder of loose branches. */
+    private final File _headsFolder;
+    /** The packed-refs file. */
+    private final File _packedFile;
+    /** The contents of HEAD, or null if not yet read. */
+    private String _head;
+    /** The loose branches read so far, mapped to null if there is no loose
+     *  file for them. */
+    private final HashMap<String, String> _loose = new HashMap<>();
+    /** The packed branches, or null if not yet read. */
+    private TreeMap<String, String> _packed;
+}
@@ -0,0 +1,1249 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+
+
+import static gitlet.Utils.*;
+
+
+/** A gitlet repository: the working tree under one directory and the
+ *  .gitlet folder in it.  Its commands return what they find rather than
+ *  printing it, and report failures by throwing a GitletException whose
+ *  message is meant for the user, so any number of repositories can be
+ *  used from one JVM.  A Repository keeps the commits and blobs it has
+ *  decoded, the refs and the staging area from one command to the next;
+ *  its commands run one at a time, but those of different repositories
+ *  may run at once.  Other processes using the same repository should
+ *  call refresh() in between.
+ */
+public class Repository {
+
+    /** The layout version of repositories this gitlet writes.  The first
+     * gitlet wrote no format file and saved its objects with Java
+     * serialization; upgrade() rewrites such repositories in this one. */
+    static final int FORMAT = 1;
+
+    /** The repository whose working tree is ROOT, whose files may or may
+     *  not exist yet. */
+    private Repository(File root) {
+        _root = root;
+        _gitletFolder = join(_root, ".gitlet");
+        _blobsFolder = join(_gitletFolder, "blobs");
+        _commitsFolder = join(_gitletFolder, "commits");
+        _formatFile = join(_gitletFolder, "format");
+        _packsFolder = join(_gitletFolder, "packs");
+        _branchesFile = join(_gitletFolder, "branches");
+        _stagingFile = join(_gitletFolder, "stagingArea");
+        _commitStore = new ObjectStore(_commitsFolder, _packsFolder,
+                                       "commits");
+        _blobStore = new BlobStore(new ObjectStore(_blobsFolder, _packsFolder,
+                                                   "blobs"));
+        _messageIndex = new MessageIndex(join(_gitletFolder, "messages"),
+                                         join(_gitletFolder, "messages.idx"));
+        _commitGraph = new CommitGraph(join(_gitletFolder, "commit-graph"),
+                join(_gitletFolder, "commit-graph.lookup"));
+        _refs = new RefStore(join(_gitletFolder, "HEAD"),
+                             join(_gitletFolder, "refs", "heads"),
+                             join(_gitletFolder, "packed-refs"));
+    }
+
+    /** Returns the repository whose working tree is ROOT, first bringing
+     *  it up to FORMAT if an older gitlet made it. */
+    public static Repository open(File root) {
+        Repository repo = new Repository(root.getAbsoluteFile());
+        if (!repo._gitletFolder.exists()) {
+            throw error("Not in an initialized Gitlet directory.");
+        }
+        repo.upgrade();
+        return repo;
+    }
+
+    /** Creates a repository in ROOT, with an initial commit on branch
+     *  master, and returns it. */
+    public static Repository init(File root) throws IOException {
+        Repository repo = new Repository(root.getAbsoluteFile());
+        if (repo._gitletFolder.exists()) {
+            throw error("A Gitlet version-control system already "
+                    + "exists in the current directory.");
+        }
+        repo.create();
+        return repo;
+    }
+
+    /** Returns the directory of the working tree. */
+    public File root() {
+        return _root;
+    }
+
+    /** Returns the .gitlet folder. */
+    File gitletFolder() {
+        return _gitletFolder;
+    }
+
+    /** Makes the folders and files of a new repository. */
+    private synchronized void create() throws IOException {
+        _gitletFolder.mkdir();
+        _blobsFolder.mkdir();
+        _commitsFolder.mkdir();
+        _packsFolder.mkdir();
+        writeContents(_formatFile, FORMAT + "\n");
+        StagingArea staging = new StagingArea();
+        _stagingFile.createNewFile();
+        saveStage(staging);
+        Commit initialCommit = new Commit("initial commit", null, null);
+        String headSha1Code = saveCommit(initialCommit);
+        _refs.setBranch("master", headSha1Code);
+        _refs.setCurrentBranch("master");
+    }
+
+    /** Forgets what was read from the repository's mutable files (the
+     *  refs, the staging area, the pack indexes and the commit graph), so
+     *  that the next command sees changes made since by other processes.
+     *  Decoded commits and blobs are kept, since they never change. */
+    public synchronized void refresh() {
+        _refs.reload();
+        deferStage(false);
+        _stagingCache = null;
+        _commitStore.reload();
+        _blobStore.reload();
+        _commitGraph.reload();
+    }
+
+    /** Brings a repository made by the first gitlet up to FORMAT, and
+     *  refuses one whose format this gitlet does not know. */
+    private synchronized void upgrade() {
+        if (_formatFile.isFile()) {
+            String format = readContentsAsString(_formatFile).trim();
+            if (!format.equals(Integer.toString(FORMAT))) {
+                throw error("Unsupported repository format %s.", format);
+            }
+        } else if (Legacy.isSerialized(_branchesFile)) {
+            upgradeLegacy();
+        } else {
+            throw error("Unsupported repository format: no format file.");
+        }
+    }
+
+    /** Rewrites a repository made by the first gitlet, which saved its
+     *  objects with Java serialization, in FORMAT.  Every commit gets a
+     *  new id, the sha1 of its encoding, and the files it held become
+     *  blobs; the branches and the staging area are rewritten to match.
+     *  Everything is read before anything is written, so a repository
+     *  that cannot be read is left as it was.  The old files are deleted
+     *  only after the format file is written; until then they are
+     *  intact, and an interrupted upgrade starts again from them. */
+    private void upgradeLegacy() {
+        TreeMap<String, Legacy.OldCommit> oldCommits = new TreeMap<>();
+        for (String name : Objects.requireNonNull(
+                 plainFilenamesIn(_commitsFolder))) {
+            if (name.length() == UID_LENGTH) {
+                oldCommits.put(name,
+                        Legacy.readCommit(join(_commitsFolder, name)));
+            }
+        }
+        TreeMap<String, String> branches =
+                Legacy.readBranches(_branchesFile);
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            if (!branch.getKey().equals("CURBRANCH")
+                    && !oldCommits.containsKey(branch.getValue())) {
+                throw error("Cannot upgrade: no commit %s.",
+                            branch.getValue());
+            }
+        }
+        Legacy.OldStaging oldStaging = null;
+        if (Legacy.isSerialized(_stagingFile)) {
+            oldStaging = Legacy.readStaging(_stagingFile);
+        }
+
+        IdentityHashMap<Legacy.OldCommit, String> newIds =
+                new IdentityHashMap<>();
+        TreeMap<String, Commit> commits = new TreeMap<>();
+        TreeMap<String, String> messages = new TreeMap<>();
+        for (Legacy.OldCommit old : oldCommits.values()) {
+            upgradeLegacyCommit(old, newIds, commits);
+        }
+        for (Map.Entry<String, Commit> entry : commits.entrySet()) {
+            messages.put(entry.getKey(), entry.getValue().getMessage());
+        }
+        _messageIndex.rewrite(messages);
+        _commitGraph.rewrite(commits);
+        String headSha1 = newIds.get(oldCommits.get(branches.get("HEAD")));
+        if (oldStaging != null) {
+            Commit head = commits.get(headSha1);
+            StagingArea staging = new StagingArea();
+            for (Map.Entry<String, String> entry
+                     : oldStaging.stageAdd().entrySet()) {
+                staging.getAdd().put(entry.getKey(), _blobStore.write(
+                        entry.getValue().getBytes(StandardCharsets.UTF_8),
+                        head.getBlobId(entry.getKey())));
+            }
+            staging.getRm().addAll(oldStaging.stageRm());
+            saveStage(staging);
+        }
+        String currBranch = branches.get("CURBRANCH");
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            if (!branch.getKey().equals("HEAD")
+                    && !branch.getKey().equals("CURBRANCH")) {
+                _refs.setBranch(branch.getKey(),
+                        newIds.get(oldCommits.get(branch.getValue())));
+            }
+        }
+        if (currBranch != null && _refs.branch(currBranch) != null) {
+            _refs.setCurrentBranch(currBranch);
+        } else {
+            _refs.moveHead(headSha1);
+        }
+        writeContents(_formatFile, FORMAT + "\n");
+
+        for (String name : oldCommits.keySet()) {
+            join(_commitsFolder, name).delete();
+        }
+        for (String name : Objects.requireNonNull(
+                 plainFilenamesIn(_blobsFolder))) {
+            if (name.length() == UID_LENGTH) {
+                join(_blobsFolder, name).delete();
+            }
+        }
+        _branchesFile.delete();
+    }
+
+    /** Saves OLD, and its ancestors, as commits in the current format,
+     *  unless they are in NEWIDS, which maps each commit saved to its new
+     *  id, and adds them to NEWIDS and COMMITS.  Each file becomes a blob,
+     *  stored as a delta against the same file in the first parent where
+     *  it can be.  Returns the new id of OLD. */
+    private String upgradeLegacyCommit(
+            Legacy.OldCommit old,
+            IdentityHashMap<Legacy.OldCommit, String> newIds,
+            TreeMap<String, Commit> commits) {
+        if (old == null) {
+            return null;
+        }
+        String sha1 = newIds.get(old);
+        if (sha1 != null) {
+            return sha1;
+        }
+        String parent1 = upgradeLegacyCommit(old.parent1(), newIds, commits);
+        String parent2 = upgradeLegacyCommit(old.parent2(), newIds, commits);
+        Commit commit = new Commit(old.message(), parent1, parent2,
+                                   old.time());
+        Commit base = parent1 == null ? null : commits.get(parent1);
+        for (Map.Entry<String, String> entry : old.contents().entrySet()) {
+            String name = entry.getKey();
+            commit.getContents().put(name, _blobStore.write(
+                    entry.getValue().getBytes(StandardCharsets.UTF_8),
+                    base == null ? null : base.getBlobId(name)));
+        }
+        byte[] encoded = Codec.encode(commit);
+        sha1 = sha1((Object) encoded);
+        _commitStore.write(sha1, encoded);
+        newIds.put(old, sha1);
+        commits.put(sha1, commit);
+        return sha1;
+    }
+
+    /** Stages the files named by PATHS for addition.  A directory stands
+     *  for every file under it outside .gitlet.  The staging area is read
+     *  and written once, however many files there are, and nothing is
+     *  staged if any path does not exist.  The files are hashed and
+     *  written to the blob store by a pool of threads; the staging area
+     *  is only changed on this one. */
+    public synchronized void add(String... paths) throws IOException {
+        TreeMap<String, File> files = new TreeMap<>();
+        for (String path : paths) {
+            File addFile = join(_root, path);
+            if (!addFile.exists()) {
+                throw error("File does not exist.");
+            }
+            listFiles(path, addFile, files);
+        }
+        Commit headCommit = pullHeadCommit();
+        StagingArea staging = getStaging();
+        ArrayList<Callable<IndexEntry>> writes = new ArrayList<>();
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            writes.add(() -> writeStaged(staging, headCommit,
+                                         file.getKey(), file.getValue()));
+        }
+        Iterator<String> names = files.keySet().iterator();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (IndexEntry written : runAll(writes, threads)) {
+            stageFile(staging, headCommit, names.next(), written);
+        }
+        saveStage(staging);
+    }
+
+    /** Writes ADDFILE, named FILENAME, to the blob store, as a delta
+     *  against its version in STAGING or else in HEADCOMMIT where that
+     *  pays, and returns its stat data with its blob id.  A file whose
+     *  stat data show it unchanged since it was last hashed is not read
+     *  at all if its blob is still stored.  Only reads STAGING, so it may
+     *  run on any thread. */
+    private IndexEntry writeStaged(StagingArea staging,
+                                          Commit headCommit,
+                                          String fileName, File addFile) {
+        IndexEntry stat = IndexEntry.of(addFile, null);
+        if (stat == null) {
+            throw error("Could not read %s.", fileName);
+        }
+        String addSha1 = staging.knownBlobId(fileName, stat);
+        if (addSha1 == null || !_blobStore.contains(addSha1)) {
+            String base = staging.getAdd().get(fileName);
+            if (base == null) {
+                base = headCommit.getBlobId(fileName);
+            }
+            addSha1 = writeBlob(addFile, base);
+        }
+        return new IndexEntry(stat.size(), stat.mtime(), stat.ctime(),
+                              stat.inode(), addSha1);
+    }
+
+    /** Replaces the working files of CURRCOMMIT with those of
+     *  GIVENCOMMIT, recording their stat data in STAGING.  Files that
+     *  GIVENCOMMIT does not track are deleted first.  The rest are read
+     *  from the blob store and written by a pool of CHECKOUT_THREADS
+     *  threads, except those whose stat data show they already hold the
+     *  version in GIVENCOMMIT.  Each task streams its blob from the store
+     *  to its file; there is no separate read-ahead stage, since one would
+     *  have to hold whole blobs in memory while they wait to be written,
+     *  and a blob may be far larger than memory. */
+    private void checkoutFiles(Commit currCommit, Commit givenCommit,
+                                      StagingArea staging) {
+        for (String currFileName : currCommit.getAllFileNames()) {
+            if (!givenCommit.fileExistInCommit(currFileName)) {
+                join(_root, currFileName).delete();
+            }
+        }
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<Callable<IndexEntry>> writes = new ArrayList<>();
+        for (String givenFileName : givenCommit.getAllFileNames()) {
+            File putInCWD = join(_root, givenFileName);
+            String blobId = givenCommit.getBlobId(givenFileName);
+            IndexEntry stat = IndexEntry.of(putInCWD, null);
+            if (stat == null || !blobId.equals(
+                    staging.knownBlobId(givenFileName, stat))) {
+                names.add(givenFileName);
+                writes.add(() -> {
+                    writeBlobTo(blobId, putInCWD);
+                    return IndexEntry.of(putInCWD, blobId);
+                });
+            }
+        }
+        Iterator<String> written = names.iterator();
+        for (IndexEntry stat : runAll(writes, CHECKOUT_THREADS)) {
+            String fileName = written.next();
+            if (stat != null) {
+                staging.record(fileName, stat, stat.blobId());
+            }
+        }
+    }
+
+    /** Runs TASKS on a pool of up to THREADS threads and returns their
+     *  results in the order of TASKS.  A single task runs on this
+     *  thread. */
+    private <T> List<T> runAll(List<Callable<T>> tasks,
+                                      int threads) {
+        ArrayList<T> result = new ArrayList<>();
+        if (tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                result.add(call(task));
+            }
+            return result;
+        }
+        ExecutorService pool =
+            Executors.newFixedThreadPool(Math.min(tasks.size(), threads));
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                result.add(future.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("Interrupted.");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("%s", excp.getCause().getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    /** Returns the result of TASK, run on this thread. */
+    private <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException excp) {
+            throw excp;
+        } catch (Exception excp) {
+            throw error("%s", excp.getMessage());
+        }
+    }
+
+    /** Puts FILE, named NAME, into FILES if it is a plain file, or else
+     *  each file under it, named by its path from NAME. */
+    private void listFiles(String name, File file,
+                                  TreeMap<String, File> files) {
+        if (!file.isDirectory()) {
+            files.put(name, file);
+            return;
+        }
+        String[] children = file.list();
+        if (children == null) {
+            return;
+        }
+        String prefix = name.equals(".") ? ""
+            : name.endsWith("/") ? name : name + "/";
+        for (String child : children) {
+            File childFile = join(file, child);
+            if (!childFile.toPath().normalize().equals(
+                    _gitletFolder.toPath().normalize())) {
+                listFiles(prefix + child, childFile, files);
+            }
+        }
+    }
+
+    /** Stages FILENAME for addition in STAGING, whose head commit is
+     *  HEADCOMMIT, given WRITTEN, its stat data and the id of the blob
+     *  writeStaged() wrote for it. */
+    private void stageFile(StagingArea staging, Commit headCommit,
+                                  String fileName, IndexEntry written) {
+        String addSha1 = written.blobId();
+        staging.record(fileName, written, addSha1);
+        if (staging.getAdd().containsKey(fileName)) {
+            staging.getAdd().replace(fileName, addSha1);
+        } else if (headCommit.fileExistInCommit(fileName)) {
+            String headFileSha1 = headCommit.getBlobId(fileName);
+            if (addSha1.equals(headFileSha1)) {
+                staging.getAdd().remove(fileName);
+                staging.getRm().remove(fileName);
+            } else {
+                staging.getAdd().put(fileName, addSha1);
+            }
+        } else if (staging.getRm().contains(fileName)) {
+            staging.getRm().remove(fileName);
+        } else {
+            staging.getAdd().put(fileName, addSha1);
+        }
+    }
+
+    /** Commits what is staged, with message MSG, and returns the new
+     *  commit's id. */
+    public synchronized String commit(String msg) throws IOException {
+        return commit(msg, null);
+    }
+
+    /** Commits what is staged, with message MSG and second parent PARENT2,
+     *  or none if it is null, and returns the new commit's id. */
+    private String commit(String msg, String parent2) throws IOException {
+        if (Objects.equals(msg, "")) {
+            throw error("Please enter a commit message.");
+        }
+        StagingArea staging = getStaging();
+        boolean stagingIsEmpty;
+        stagingIsEmpty = staging.getAdd().isEmpty()
+                && staging.getRm().isEmpty();
+        if (stagingIsEmpty) {
+            throw error("No changes added to the commit.");
+        } else {
+            String lastCommitSha1 = pullHeadSha1();
+            Commit lastCommit = getCommit(lastCommitSha1);
+            Commit newCommit;
+            if (parent2 == null) {
+                newCommit = new Commit(msg, lastCommitSha1, null);
+            } else {
+                newCommit = new Commit(msg, lastCommitSha1, parent2);
+            }
+            TreeMap<String, String> lastCommitFile = lastCommit.getContents();
+            newCommit.getContents().putAll(lastCommitFile);
+            TreeMap<String, String> newCommitFileInAdd = staging.getAdd();
+            newCommit.getContents().putAll(newCommitFileInAdd);
+            for (String rmKeys : staging.getRm()) {
+                newCommit.getContents().remove(rmKeys);
+            }
+            String newCommitSha1 = saveCommit(newCommit);
+            _refs.moveHead(lastCommitSha1, newCommitSha1);
+            staging.clearAll();
+            saveStage(staging);
+            if (_batch) {
+                _packPending = true;
+            } else {
+                _commitStore.packIfNeeded();
+                _blobStore.packIfNeeded();
+            }
+            return newCommitSha1;
+        }
+    }
+
+    /** Returns the ids of the head commit and its first parents, newest
+     *  first. */
+    public synchronized List<String> log() {
+        ArrayList<String> result = new ArrayList<>();
+        int pos = _commitGraph.existingPosition(pullHeadSha1());
+        for (; pos != CommitGraph.NONE; pos = _commitGraph.parent1(pos)) {
+            result.add(_commitGraph.id(pos));
+        }
+        return result;
+    }
+
+    public synchronized void checkoutByFileName(String fileName) {
+        String headSha1 = pullHeadSha1();
+        Commit headCommit = getCommit(headSha1);
+        if (!headCommit.fileExistInCommit(fileName)) {
+            throw error("File does not exist in that commit.");
+        } else {
+            String headVersionFile = headCommit.getBlobId(fileName);
+            File putInCWD = join(_root, fileName);
+            writeBlobTo(headVersionFile, putInCWD);
+        }
+    }
+
+    public synchronized void checkoutByCommitID(String commitID,
+                                                String fileName) {
+        Commit givenCommit = getCommit(resolveCommitId(commitID));
+        if (!givenCommit.fileExistInCommit(fileName)) {
+            throw error("File does not exist in that commit.");
+        } else {
+            String commitVersionFile = givenCommit.getBlobId(fileName);
+            File putInCWD = join(_root, fileName);
+            writeBlobTo(commitVersionFile, putInCWD);
+        }
+    }
+
+    public synchronized void checkoutByBranch(String branchName)
+        throws IOException {
+        if (pullBranchSha1(branchName) == null) {
+            throw error("No such branch exists.");
+        } else if (branchName.equals(getCurrBranchName())) {
+            throw error("No need to checkout the current branch.");
+        } else {
+            String branchSha1 = pullBranchSha1(branchName);
+            Commit branchCommit = getCommit(branchSha1);
+            String headSha1 = pullHeadSha1();
+            Commit headCommit = getCommit(headSha1);
+            ArrayList<String> filesInBranch = branchCommit.getAllFileNames();
+            for (String files : filesInBranch) {
+                if (!headCommit.fileExistInCommit(files)) {
+                    if (join(_root, files).exists()) {
+                        throw error("There is an "
+                                + "untracked file in the way; "
+                                + "delete it, or add and commit it first.");
+                    }
+                }
+            }
+            StagingArea staging = getStaging();
+            checkoutFiles(headCommit, branchCommit, staging);
+            _refs.setCurrentBranch(branchName);
+            staging.clearAll();
+            saveStage(staging);
+        }
+    }
+
+    public synchronized void rm(String fileName) {
+        StagingArea staging = getStaging();
+        TreeMap<String, String> stageAdded = staging.getAdd();
+        Commit headCommit = pullHeadCommit();
+        ArrayList<String> headFileNames = headCommit.getAllFileNames();
+        if (!stageAdded.containsKey(fileName)) {
+            if (!headFileNames.contains(fileName)) {
+                throw error("No reason to remove the file.");
+            }
+        }
+        stageAdded.remove(fileName);
+        if (headFileNames.contains(fileName)) {
+            ArrayList<String> stageRemoved = staging.getRm();
+            File givenFile = join(_root, fileName);
+            if (givenFile.exists()) {
+                givenFile.delete();
+            }
+            stageRemoved.add(fileName);
+        }
+        saveStage(staging);
+    }
+
+    /** Returns the ids of all commits ever made. */
+    public synchronized List<String> globalLog() {
+        return new ArrayList<>(_commitStore.ids());
+    }
+
+    /** Returns the ids of the commits whose message is COMMITMSG. */
+    public synchronized List<String> find(String commitMsg) {
+        return _messageIndex.withMessage(commitMsg);
+    }
+
+    /** Returns the ids of the commits whose messages contain the word
+     *  WORD, ignoring case. */
+    public synchronized List<String> findWord(String word) {
+        return _messageIndex.withWord(word);
+    }
+
+    /** Returns the ids of the commits part of whose messages match the
+     *  regular expression REGEX. */
+    public synchronized List<String> findRegex(String regex) {
+        Pattern pattern = null;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException excp) {
+            throw error("Invalid pattern.");
+        }
+        return _messageIndex.matching(pattern);
+    }
+
+    /** Returns the status of the repository and its working tree.  The
+     *  stat data of the files this had to hash are saved, so that the next
+     *  status need not hash them again. */
+    public synchronized Status status() {
+        TreeMap<String, String> otherBranches = _refs.branches();
+        String currBranchName = getCurrBranchName();
+        otherBranches.remove(currBranchName);
+        StagingArea staging = getStaging();
+        Commit currCommit = pullHeadCommit();
+        StatusScan scan = new StatusScan(_root, _gitletFolder, staging,
+                                         currCommit);
+        scan.record();
+        if (staging.isStatChanged()) {
+            HashSet<String> tracked =
+                new HashSet<>(currCommit.getAllFileNames());
+            tracked.addAll(staging.getAdd().keySet());
+            staging.getStat().keySet().retainAll(tracked);
+            saveStage(staging);
+        }
+        return new Status(currBranchName,
+                          new ArrayList<>(otherBranches.keySet()),
+                          new ArrayList<>(staging.getAdd().keySet()),
+                          staging.getRm(), scan.deleted(), scan.modified(),
+                          scan.untracked());
+    }
+
+    public synchronized void branch(String branchName) {
+        if (pullBranchSha1(branchName) != null) {
+            throw error("A branch with that name already exists.");
+        }
+        String headBranchSha1 = pullHeadSha1();
+        _refs.setBranch(branchName, null, headBranchSha1);
+    }
+
+    public synchronized void rmBranch(String branchName) {
+        String currBranchName = getCurrBranchName();
+        if (pullBranchSha1(branchName) == null) {
+            throw error("A branch with that name does not exist.");
+        } else if (branchName.equals(currBranchName)) {
+            throw error("Cannot remove the current branch.");
+        } else {
+            _refs.removeBranch(branchName);
+        }
+    }
+
+    /** Deletes the commits and blobs that cannot be reached from a branch,
+     *  HEAD or the staging area, packs the rest, and returns the number of
+     *  bytes freed.  Only reachable objects are read. */
+    public synchronized long gc() {
+        TreeMap<String, Commit> commits = new TreeMap<>();
+        TreeMap<String, String> messages = new TreeMap<>();
+        HashSet<String> blobs = new HashSet<>();
+        ArrayDeque<String> pending =
+            new ArrayDeque<>(_refs.branches().values());
+        pending.push(pullHeadSha1());
+        while (!pending.isEmpty()) {
+            String sha1 = pending.pop();
+            if (commits.containsKey(sha1)) {
+                continue;
+            }
+            Commit commit = getCommit(sha1);
+            commits.put(sha1, commit);
+            messages.put(sha1, commit.getMessage());
+            _blobStore.mark(commit.getContents().values(), blobs);
+            if (commit.getParent1() != null) {
+                pending.push(commit.getParent1());
+            }
+            if (commit.getParent2() != null) {
+                pending.push(commit.getParent2());
+            }
+        }
+        _blobStore.mark(getStaging().getAdd().values(), blobs);
+        long freed = _commitStore.repack(commits.keySet())
+            + _blobStore.repack(blobs);
+        _messageIndex.rewrite(messages);
+        _commitGraph.rewrite(commits);
+        _refs.pack();
+        return freed;
+    }
+
+    public synchronized void reset(String commitID) {
+        String commitSha1 = resolveCommitId(commitID);
+        Commit givenCommit = getCommit(commitSha1);
+        String headSha1 = pullHeadSha1();
+        Commit currCommit = getCommit(headSha1);
+        for (String givenFileName : givenCommit.getAllFileNames()) {
+            if (!currCommit.fileExistInCommit(givenFileName)) {
+                File cwdPath = join(_root, givenFileName);
+                if (cwdPath.exists()) {
+                    throw error("There is an untracked file in the way; "
+                            + "delete it, or add and commit it first.");
+                }
+            }
+        }
+        StagingArea staging = getStaging();
+        checkoutFiles(currCommit, givenCommit, staging);
+        String currName = null;
+        for (Map.Entry<String, String> curr : _refs.branches().entrySet()) {
+            if (curr.getValue().equals(commitSha1)) {
+                currName = curr.getKey();
+                break;
+            }
+        }
+        if (currName != null) {
+            _refs.setCurrentBranch(currName);
+        } else {
+            _refs.moveHead(headSha1, commitSha1);
+        }
+        staging.clearAll();
+        saveStage(staging);
+    }
+
+    /** Merges the branch OTHERNAME into the current branch, and returns
+     *  how that went. */
+    public synchronized MergeResult merge(String otherName)
+        throws IOException {
+        boolean isConflict = false;
+        String headSha1 = pullHeadSha1();
+        Commit headCommit = pullHeadCommit();
+        StagingArea staging = getStaging();
+
+        mergeErrorCase1(staging, otherName);
+
+        String otherSha1 = pullBranchSha1(otherName);
+        Commit otherCommit = getCommit(otherSha1);
+        ArrayList<String> filesInOther = otherCommit.getAllFileNames();
+        ArrayList<String> filesInHead = headCommit.getAllFileNames();
+
+        mergeErrorCase2(filesInHead, filesInOther);
+
+        String splitSha1 = splitPointSha1(otherName);
+        Commit splitCommit = getCommit(splitSha1);
+
+        if (mergeErrorCase3(headSha1, otherSha1, splitSha1, otherName)) {
+            return MergeResult.FAST_FORWARD;
+        }
+
+        ArrayList<String> filesInSplit = splitCommit.getAllFileNames();
+
+        isConflict = mergeInSplitCase(filesInSplit,
+                otherCommit, splitSha1, otherSha1,
+                staging, splitCommit, headSha1, isConflict);
+
+        isConflict = mergeNotInSplitCase(filesInHead, otherCommit,
+                splitCommit, isConflict, staging,
+                headSha1, filesInOther, otherSha1);
+
+        saveStage(staging);
+        commit("Merged " + otherName + " into "
+                + getCurrBranchName() + ".", otherSha1);
+        return isConflict ? MergeResult.CONFLICT : MergeResult.MERGED;
+    }
+
+    private boolean mergeInSplitCase(ArrayList<String> filesInSplit,
+                                            Commit otherCommit,
+                                            String splitSha1,
+                                            String otherSha1,
+                                            StagingArea staging,
+                                            Commit splitCommit, String headSha1,
+                                            boolean isConflict) {
+        Commit headCommit = pullHeadCommit();
+        for (String aFileInSplit : filesInSplit) {
+            boolean modifiedInOther =
+                    modifiedInOther(aFileInSplit, otherCommit, splitSha1);
+            boolean modifiedInHead = modifiedInHead(aFileInSplit, splitSha1);
+            boolean existInHead = existInHead(aFileInSplit, headCommit);
+            boolean existInOther = existInOther(aFileInSplit, otherCommit);
+            if (modifiedInOther && !modifiedInHead && existInOther) {
+                checkoutByCommitID(otherSha1, aFileInSplit);
+                staging.getAdd().put(aFileInSplit,
+                        otherCommit.getBlobId(aFileInSplit));
+            } else if (modifiedInHead && !modifiedInOther && existInHead) {
+                checkoutByCommitID(headSha1, aFileInSplit);
+            } else if (modifiedInHead && modifiedInOther) {
+                if (!existInHead && !existInOther) {
+                    continue;
+                } else if (existInHead && !existInOther) {
+                    isConflict = true;
+                    meetConflict(aFileInSplit, headCommit,
+                            otherCommit, existInHead, existInOther);
+                    staging.getAdd().put(aFileInSplit,
+                            writeBlob(join(_root, aFileInSplit),
+                            headCommit.getBlobId(aFileInSplit)));
+                } else if (existInOther && !existInHead) {
+                    isConflict = true;
+                    meetConflict(aFileInSplit, headCommit,
+                            otherCommit, existInHead, existInOther);
+                    staging.getAdd().put(aFileInSplit,
+                            writeBlob(join(_root, aFileInSplit),
+                            headCommit.getBlobId(aFileInSplit)));
+                } else if (otherCommit.getBlobId(aFileInSplit).equals(
+                        headCommit.getBlobId(aFileInSplit))) {
+                    continue;
+                } else {
+                    isConflict = true;
+                    meetConflict(aFileInSplit, headCommit,
+                            otherCommit, existInHead, existInOther);
+                    staging.getAdd().put(aFileInSplit,
+                            writeBlob(join(_root, aFileInSplit),
+                            headCommit.getBlobId(aFileInSplit)));
+                }
+            } else if (!modifiedInHead && !existInOther) {
+                join(_root, aFileInSplit).delete();
+                staging.getRm().add(aFileInSplit);
+            } else if (modifiedInHead && !existInOther) {
+                isConflict = true;
+                meetConflict(aFileInSplit, headCommit,
+                        otherCommit, existInHead, existInOther);
+                staging.getAdd().put(aFileInSplit,
+                        writeBlob(join(_root, aFileInSplit),
+                            headCommit.getBlobId(aFileInSplit)));
+            } else if (!modifiedInOther && !existInHead) {
+                File path = join(_root, aFileInSplit);
+                if (path.exists()) {
+                    path.delete();
+                }
+            }
+        }
+        saveStage(staging);
+        return isConflict;
+    }
+
+    private boolean mergeNotInSplitCase(
+            ArrayList<String> filesInHead,
+                                            Commit otherCommit,
+                                            Commit splitCommit,
+                                            boolean isConflict,
+                                            StagingArea staging,
+                                            String headSha1,
+                                            ArrayList<String> filesInOther,
+                                            String otherSha1) {
+        Commit headCommit = pullHeadCommit();
+        for (String aFileInHead : filesInHead) {
+            boolean existInHead = existInHead(aFileInHead, headCommit);
+            boolean existInOther = existInOther(aFileInHead, otherCommit);
+            if (!existInSplit(aFileInHead, splitCommit)) {
+                if (existInHead && existInOther) {
+                    if (!otherCommit.getBlobId(aFileInHead).equals(
+                            headCommit.getBlobId(aFileInHead))) {
+                        isConflict = true;
+                        meetConflict(aFileInHead, headCommit,
+                                otherCommit, existInHead, existInOther);
+                        staging.getAdd().put(aFileInHead,
+                                writeBlob(join(_root, aFileInHead),
+                                headCommit.getBlobId(aFileInHead)));
+                    }
+                } else if (!existInOther) {
+                    checkoutByCommitID(headSha1, aFileInHead);
+                }
+            }
+        }
+        for (String aFileInOther : filesInOther) {
+            boolean existInHead = existInHead(aFileInOther, headCommit);
+            boolean existInOther = existInOther(aFileInOther, otherCommit);
+            if (!existInSplit(aFileInOther, splitCommit)) {
+                if (existInHead && existInOther) {
+                    if (!otherCommit.getBlobId(aFileInOther).equals(
+                            headCommit.getBlobId(aFileInOther))) {
+                        isConflict = true;
+                        meetConflict(aFileInOther, headCommit,
+                                otherCommit, existInHead, existInOther);
+                        staging.getAdd().put(aFileInOther,
+                                writeBlob(join(_root, aFileInOther),
+                                headCommit.getBlobId(aFileInOther)));
+                    }
+                } else if (!existInHead) {
+                    checkoutByCommitID(otherSha1, aFileInOther);
+                    staging.getAdd().put(aFileInOther,
+                            otherCommit.getBlobId(aFileInOther));
+                }
+            }
+        }
+        return isConflict;
+    }
+
+    private void mergeErrorCase1(StagingArea staging,
+                                        String otherName) {
+        if (!staging.getAdd().isEmpty() || !staging.getRm().isEmpty()) {
+            throw error("You have uncommitted changes.");
+        }
+        if (pullBranchSha1(otherName) == null) {
+            throw error("A branch with that name does not exist.");
+        }
+        if (otherName.equals(getCurrBranchName())) {
+            throw error("Cannot merge a branch with itself.");
+        }
+    }
+
+    private void mergeErrorCase2(ArrayList<String> filesInHead,
+                                        ArrayList<String> filesInOther) {
+        for (String files : filesInOther) {
+            if (!filesInHead.contains(files)) {
+                if (join(_root, files).exists()) {
+                    throw error("There is an untracked file in the way; "
+                            + "delete it, or add and commit it first.");
+                }
+            }
+        }
+    }
+
+    /** Returns true iff the merge of OTHERNAME was a fast-forward, which
+     *  it has done. */
+    private boolean mergeErrorCase3(String headSha1,
+                                           String otherSha1,
+                                           String splitSha1,
+                                           String otherName)
+        throws IOException {
+        if (otherSha1.equals(splitSha1)) {
+            throw error("Given branch is an ancestor of the current branch.");
+        }
+        if (headSha1.equals(splitSha1)) {
+            checkoutByBranch(otherName);
+            return true;
+        }
+        return false;
+    }
+
+    private void meetConflict(String file, Commit headCommit,
+                                     Commit givenCommit,
+                                     boolean existInHead,
+                                     boolean existInGiven) {
+        File pathToCWD = join(_root, file);
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(pathToCWD))) {
+            out.write("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+            if (existInHead) {
+                _blobStore.copyTo(headCommit.getBlobId(file), out);
+            }
+            out.write("=======\n".getBytes(StandardCharsets.UTF_8));
+            if (existInGiven) {
+                _blobStore.copyTo(givenCommit.getBlobId(file), out);
+            }
+            out.write(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw error("Could not write %s: %s", file, excp.getMessage());
+        }
+    }
+
+    private String splitPointSha1(String branchName) {
+        int head = _commitGraph.existingPosition(pullHeadSha1());
+        int branch = _commitGraph.existingPosition(
+                pullBranchSha1(branchName));
+        int split = _commitGraph.mergeBase(head, branch);
+        return split == CommitGraph.NONE ? null : _commitGraph.id(split);
+    }
+
+    private boolean existInSplit(String fileName, Commit splitCommit) {
+        return splitCommit.fileExistInCommit(fileName);
+    }
+
+    private boolean modifiedInOther(String fileName,
+                                           Commit otherCommit,
+                                           String splitSha1) {
+        Commit splitCommit = getCommit(splitSha1);
+        String splitBlobs = splitCommit.getBlobId(fileName);
+        String otherBlobs = otherCommit.getBlobId(fileName);
+        boolean result = false;
+        if (existInOther(fileName, otherCommit)) {
+            if (!Objects.equals(splitBlobs, otherBlobs)) {
+                result = true;
+            }
+        } else {
+            result = true;
+        }
+        return result;
+    }
+
+    private boolean modifiedInHead(String fileName, String splitSha1) {
+        boolean result = false;
+        Commit splitCommit = getCommit(splitSha1);
+        String splitBlobs = splitCommit.getBlobId(fileName);
+        Commit headCommit = pullHeadCommit();
+        String headBlobs = headCommit.getBlobId(fileName);
+        if (existInHead(fileName, headCommit)) {
+            if (!Objects.equals(splitBlobs, headBlobs)) {
+                result = true;
+            }
+        } else {
+            result = true;
+        }
+        return result;
+    }
+
+    private boolean existInOther(String fileName, Commit otherCommit) {
+        return otherCommit.fileExistInCommit(fileName);
+    }
+
+    private boolean existInHead(String fileName, Commit headCommit) {
+        return headCommit.fileExistInCommit(fileName);
+    }
+
+    /** Saves COMMIT, unless it is already saved, records its message in
+     *  _messageIndex and its parents in _commitGraph, and returns its
+     *  sha1. */
+    private String saveCommit(Commit commit) {
+        byte[] encoded = Codec.encode(commit);
+        String commitSha1 = sha1((Object) encoded);
+        _commitCache.put(commitSha1, commit);
+        if (!_commitStore.contains(commitSha1)) {
+            _commitStore.write(commitSha1, encoded);
+            _messageIndex.add(commitSha1, commit.getMessage());
+            _commitGraph.add(commitSha1, commit.getParent1(),
+                    commit.getParent2(), commit.getTime());
+        }
+        return commitSha1;
+    }
+
+    /** Saves the contents of FILE as a blob in _blobStore, unless a blob
+     * with the same sha1 is already there, and returns its sha1.  BASE is
+     * the sha1 of the previous version of the file, or null, which the
+     * blob may be stored as a delta against. */
+    private String writeBlob(File file, String base) {
+        return _blobStore.write(file, base);
+    }
+
+    /** Writes the contents of the blob with sha1 BLOBSHA1 to DEST,
+     *  creating its folder if need be. */
+    private void writeBlobTo(String blobSha1, File dest) {
+        File folder = dest.getParentFile();
+        if (folder != null) {
+            folder.mkdirs();
+        }
+        _blobStore.copyTo(blobSha1, dest);
+    }
+
+    /** Returns the full sha1 of the one commit whose id starts with
+     *  PREFIX, or throws an error if there is none or more than
+     *  one. */
+    private String resolveCommitId(String prefix) {
+        List<String> matches = _commitStore.idsWithPrefix(prefix, 2);
+        if (matches.isEmpty()) {
+            throw error("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw error("Commit id %s is ambiguous.", prefix);
+        }
+        return matches.get(0);
+    }
+
+    /** Returns the commit with sha1 SHA1, decoding it only the first time
+     *  it is asked for.  Commits never change, so a decoded commit stays
+     *  valid. */
+    public synchronized Commit getCommit(String sha1) {
+        Commit commit = _commitCache.get(sha1);
+        if (commit == null) {
+            commit = Codec.decodeCommit(_commitStore.read(sha1));
+            _commitCache.put(sha1, commit);
+        }
+        return commit;
+    }
+
+    private String pullHeadSha1() {
+        return _refs.head();
+    }
+
+    private Commit pullHeadCommit() {
+        String headSha1 = pullHeadSha1();
+        return getCommit(headSha1);
+    }
+
+    /** Returns the sha1 of the head of branch BRANCHNAME, or null if there
+     *  is no such branch. */
+    private String pullBranchSha1(String branchName) {
+        return _refs.branch(branchName);
+    }
+
+    /** Returns the name of the current branch, or null if there is
+     *  none. */
+    private String getCurrBranchName() {
+        return _refs.currentBranch();
+    }
+
+    /** Returns a copy of the staging area, which is read only once until
+     *  refresh() is called. */
+    private StagingArea getStaging() {
+        if (_stagingCache == null) {
+            _stagingCache = Codec.decodeStaging(
+                    readContents(_stagingFile));
+            _stagingCache.setWritten(stagingWritten());
+        }
+        return new StagingArea(_stagingCache);
+    }
+
+    /** Writes STAGING as the staging area, or only caches it while
+     *  staging writes are put off.  Stat entries of files modified no
+     *  earlier than the file was written are racy whenever it is read,
+     *  even after it has been written again later, so they are dropped
+     *  and the file written again without them. */
+    private void saveStage(StagingArea staging) {
+        if (_deferStage) {
+            _stagingCache = new StagingArea(staging);
+            _stagePending = true;
+            return;
+        }
+        writeContents(_stagingFile, Codec.encode(staging));
+        long written = stagingWritten();
+        if (staging.dropRacy(written)) {
+            writeContents(_stagingFile, Codec.encode(staging));
+            written = stagingWritten();
+        }
+        staging.setWritten(written);
+        _stagingCache = new StagingArea(staging);
+        _stagePending = false;
+    }
+
+    /** Starts a batch of commands run in this JVM, during which commit
+     *  puts off packing until endBatch(). */
+    synchronized void beginBatch() {
+        _batch = true;
+        _packPending = false;
+    }
+
+    /** Ends a batch begun by beginBatch(), writing the staging area if
+     *  its write was put off and packing if any commit asked to. */
+    synchronized void endBatch() {
+        deferStage(false);
+        _batch = false;
+        if (_packPending) {
+            _packPending = false;
+            _commitStore.packIfNeeded();
+            _blobStore.packIfNeeded();
+        }
+    }
+
+    /** Puts off writing the staging area until this is called with
+     *  DEFER false, when any put off write is done.  Only the cached copy
+     *  changes meanwhile, so other processes do not see it. */
+    synchronized void deferStage(boolean defer) {
+        _deferStage = false;
+        if (!defer && _stagePending) {
+            saveStage(_stagingCache);
+        }
+        _deferStage = defer;
+    }
+
+    /** Returns the modification time of the staging area file, in
+     *  nanoseconds.  Working files modified no earlier than this may
+     *  change again without their stat data showing it. */
+    private long stagingWritten() {
+        try {
+            return Files.getLastModifiedTime(
+                _stagingFile.toPath())
+                .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /** Number of threads that write working files during a checkout.
+     *  Writing is mostly waiting on the disk, so there are more of them
+     *  than processors, but a bounded number, since each may hold a whole
+     *  blob in memory. */
+    private static final int CHECKOUT_THREADS = 8;
+
+    /** Number of decoded commits kept in _commitCache. */
+    private static final int COMMIT_CACHE_SIZE = 4096;
+
+    /** Commits decoded so far, least recently used first. */
+    private final LinkedHashMap<String, Commit> _commitCache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Commit> eldest) {
+                return size() > COMMIT_CACHE_SIZE;
+            }
+        };
+
+    /** How a merge went. */
+    public enum MergeResult {
+        /** The current branch was an ancestor, and was moved forward. */
+        FAST_FORWARD,
+        /** A merge commit was made. */
+        MERGED,
+        /** A merge commit was made, with conflicts in some files. */
+        CONFLICT
+    }
+
+    /** The working tree. */
+    private final File _root;
+
+    /** The folder with name .gitlet, which contains everything else. */
+    private final File _gitletFolder;
+
+    /** The folder of loose blobs. */
+    private final File _blobsFolder;
+
+    /** The folder of loose commits. */
+    private final File _commitsFolder;
+
+    /** The file which holds the version of the layout of _gitletFolder. */
+    private final File _formatFile;
+
+    /** The folder of the packs of commits and blobs. */
+    private final File _packsFolder;
+
+    /** The file which held all branches, and HEAD, before version 5. */
+    private final File _branchesFile;
+
+    /** The file which holds the staging area. */
+    private final File _stagingFile;
+
+    /** All commits, loose in _commitsFolder or packed in _packsFolder. */
+    private final ObjectStore _commitStore;
+
+    /** All blobs, loose in _blobsFolder or packed in _packsFolder. */
+    private final BlobStore _blobStore;
+
+    /** The messages of all commits, for find. */
+    private final MessageIndex _messageIndex;
+
+    /** The parents, times and generations of all commits. */
+    private final CommitGraph _commitGraph;
+
+    /** The branches and HEAD. */
+    private final RefStore _refs;
+
+    /** The staging area as last read or written, or null if not yet
+     *  read. */
+    private StagingArea _stagingCache;
+
+    /** True while a batch is running. */
+    private boolean _batch;
+
+    /** True iff a commit in the running batch has put off packing. */
+    private boolean _packPending;
+
+    /** True while writes of the staging area are put off. */
+    private boolean _deferStage;
+
+    /** True iff _stagingCache has not yet been written. */
+    private boolean _stagePending;
+
+
+}
@@ -1,28 +1,41 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.TreeMap;
 
-import static gitlet.Utils.*;
-
-public class StagingArea implements Serializable {
-    /** creates a STAGINGAREA_FOLDER to store the treemap for staging. */
-    static final File STAGINGAREA_FOLDER =
-            join(Bloop.GITLET_FOLDER, "stagingArea");
-
+public class StagingArea {
     /** Treemap for stage of addition, the key is file name and the value
-     * is blob of the file as strings. */
+     * is sha1 of the file's blob in BLOBS_FOLDER. */
     private TreeMap<String, String> stageAdd;
 
     /** ArrayList for stage of removal, the key is file name. */
     private ArrayList<String> stageRm;
 
+    /** Treemap of the stat data of tracked working files, the key is file
+     * name.  It is a cache, and is kept when the stages are cleared. */
+    private TreeMap<String, IndexEntry> stat;
+
+    /** The time, in nanoseconds, at which this staging area was last
+     * written, or Long.MIN_VALUE if it has not been. */
+    private long written = Long.MIN_VALUE;
+
+    /** True iff stat data have been recorded since this staging area was
+     * read. */
+    private boolean statChanged;
 
     public StagingArea() {
         stageAdd = new TreeMap<>();
         stageRm = new ArrayList<>();
+        stat = new TreeMap<>();
+    }
+
+    /** A copy of OTHER. */
+    public StagingArea(StagingArea other) {
+        stageAdd = new TreeMap<>(other.stageAdd);
+        stageRm = new ArrayList<>(other.stageRm);
+        stat = new TreeMap<>(other.stat);
+        written = other.written;
     }
 
     public TreeMap<String, String> getAdd() {
@@ -33,6 +46,71 @@ public class StagingArea implements Serializable {
         return stageRm;
     }
 
+    public TreeMap<String, IndexEntry> getStat() {
+        return stat;
+    }
+
+    /** Returns the time this staging area was last written. */
+    long getWritten() {
+        return written;
+    }
+
+    /** Records that this staging area was written at TIME. */
+    void setWritten(long time) {
+        written = time;
+    }
+
+    /** Returns the blob id of FILE, named FILENAME, from its stat data if
+     * they are unchanged and not racy, and otherwise by hashing it and
+     * recording its new stat data.  Returns null if FILE does not
+     * exist. */
+    String blobIdOf(String fileName, File file) {
+        IndexEntry now = IndexEntry.of(file, null);
+        if (now == null) {
+            return null;
+        }
+        String blobId = knownBlobId(fileName, now);
+        if (blobId == null) {
+            blobId = BlobStore.idOf(file);
+            record(fileName, now, blobId);
+        }
+        return blobId;
+    }
+
+    /** Returns the blob id recorded for FILENAME if its stat data are
+     * still NOW and are not racy, or else null.  It only reads this
+     * staging area, so several threads may call it at once. */
+    String knownBlobId(String fileName, IndexEntry now) {
+        IndexEntry known = stat.get(fileName);
+        if (known != null && known.sameStat(now)
+                && !known.isRacy(written)) {
+            return known.blobId();
+        }
+        return null;
+    }
+
+    /** Records that FILENAME, whose stat data are NOW, has blob id
+     * BLOBID. */
+    void record(String fileName, IndexEntry now, String blobId) {
+        if (now != null) {
+            stat.put(fileName, new IndexEntry(now.size(), now.mtime(),
+                    now.ctime(), now.inode(), blobId));
+            statChanged = true;
+        }
+    }
+
+    /** Removes the stat data of the files modified no earlier than
+     * WRITTEN, returning true iff there were any. */
+    boolean dropRacy(long written) {
+        return stat.values().removeIf(entry -> entry.isRacy(written));
+    }
+
+    /** Returns true iff stat data have been recorded since this staging
+     * area was read. */
+    boolean isStatChanged() {
+        return statChanged;
+    }
+
     public void clearAll() {
         stageRm.clear();
         stageAdd.clear();
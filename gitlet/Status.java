@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.List;
+
+/** The status of a repository and its working tree, as returned by
+ *  Repository.status().  Each list is in the order status prints it.
+ */
+public class Status {
+
+    /** A status whose current branch is CURRENTBRANCH, or null if HEAD is
+     *  not on a branch, with other branches OTHERBRANCHES, files STAGED for
+     *  addition and REMOVED, tracked files DELETED from or MODIFIED in the
+     *  working tree but not staged, and UNTRACKED files. */
+    Status(String currentBranch, List<String> otherBranches,
+           List<String> staged, List<String> removed, List<String> deleted,
+           List<String> modified, List<String> untracked) {
+        _currentBranch = currentBranch;
+        _otherBranches = Collections.unmodifiableList(otherBranches);
+        _staged = Collections.unmodifiableList(staged);
+        _removed = Collections.unmodifiableList(removed);
+        _deleted = Collections.unmodifiableList(deleted);
+        _modified = Collections.unmodifiableList(modified);
+        _untracked = Collections.unmodifiableList(untracked);
+    }
+
+    /** Returns the name of the current branch, or null if there is
+     *  none. */
+    public String currentBranch() {
+        return _currentBranch;
+    }
+
+    /** Returns the names of the other branches, in order. */
+    public List<String> otherBranches() {
+        return _otherBranches;
+    }
+
+    /** Returns the files staged for addition, in order. */
+    public List<String> staged() {
+        return _staged;
+    }
+
+    /** Returns the files staged for removal. */
+    public List<String> removed() {
+        return _removed;
+    }
+
+    /** Returns the tracked or staged files missing from the working
+     *  tree. */
+    public List<String> deleted() {
+        return _deleted;
+    }
+
+    /** Returns the tracked files whose contents differ from the versions
+     *  in the head commit or staged for addition, and are not staged. */
+    public List<String> modified() {
+        return _modified;
+    }
+
+    /** Returns the files in the working tree that are not tracked, or are
+     *  staged for removal. */
+    public List<String> untracked() {
+        return _untracked;
+    }
+
+    /** Name of the current branch. */
+    private final String _currentBranch;
+    /** Names of the other branches. */
+    private final List<String> _otherBranches;
+    /** Files staged for addition. */
+    private final List<String> _staged;
+    /** Files staged for removal. */
+    private final List<String> _removed;
+    /** Files deleted but not staged. */
+    private final List<String> _deleted;
+    /** Files modified but not staged. */
+    private final List<String> _modified;
+    /** Untracked files. */
+    private final List<String> _untracked;
+}
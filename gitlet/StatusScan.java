@@ -0,0 +1,240 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** One walk over a working tree for status.  The tree is walked by a
+ *  fork/join pool: each folder is split into runs of at most SPLIT
+ *  entries, and each subfolder is walked as a task of its own, so a wide
+ *  folder and a deep tree are both spread over the pool.  A tracked file
+ *  is hashed on the same task that found it, unless its stat data show it
+ *  unchanged since it was last hashed; no other file is read.  The walk
+ *  only reads the staging area and the head commit; the stat data of the
+ *  files it hashed are recorded afterwards by the caller, with record().
+ *  Its results are then merged in one pass with the staging area and the
+ *  head commit to sort the files into the sections of status.
+ */
+class StatusScan {
+
+    /** Largest number of folder entries one task handles itself. */
+    static final int SPLIT = 64;
+
+    /** A scan of the tree under ROOT, leaving out the folder SKIP, against
+     *  STAGING and HEAD, the head commit. */
+    StatusScan(File root, File skip, StagingArea staging, Commit head) {
+        _skip = skip.toPath().normalize();
+        _staging = staging;
+        _head = head;
+        ForkJoinPool.commonPool().invoke(new Walk(root, ""));
+        classify();
+    }
+
+    /** Returns the files deleted from the working tree but tracked by the
+     *  head commit or staged for addition, staged ones first. */
+    List<String> deleted() {
+        return _deleted;
+    }
+
+    /** Returns the tracked files whose contents differ from the versions
+     *  in the head commit or staged for addition and are not staged. */
+    List<String> modified() {
+        return _modified;
+    }
+
+    /** Returns the files in the working tree that are not tracked, or are
+     *  staged for removal. */
+    List<String> untracked() {
+        return _untracked;
+    }
+
+    /** Records in the staging area the stat data of the files the walk
+     *  hashed. */
+    void record() {
+        for (Map.Entry<String, IndexEntry> file : _hashed.entrySet()) {
+            _staging.record(file.getKey(), file.getValue(),
+                            file.getValue().blobId());
+        }
+    }
+
+    /** Sorts every path the walk, the staging area and the head commit
+     *  know of into the lists of the three sections, in one pass over
+     *  them in path order. */
+    private void classify() {
+        HashSet<String> removed = new HashSet<>(_staging.getRm());
+        ArrayList<String> deletedTracked = new ArrayList<>();
+        ArrayList<String> modifiedStaged = new ArrayList<>();
+        ArrayList<String> untrackedRemoved = new ArrayList<>();
+        HashSet<String> known = new HashSet<>(_files.keySet());
+        known.addAll(_head.getContents().keySet());
+        known.addAll(_staging.getAdd().keySet());
+        String[] paths = known.toArray(new String[0]);
+        Arrays.sort(paths);
+        for (String fileName : paths) {
+            IndexEntry file = _files.get(fileName);
+            String staged = _staging.getAdd().get(fileName);
+            String committed = _head.getBlobId(fileName);
+            if (file == null) {
+                if (staged != null) {
+                    _deleted.add(fileName);
+                }
+                if (committed != null && !removed.contains(fileName)) {
+                    deletedTracked.add(fileName);
+                }
+                continue;
+            }
+            if (staged != null) {
+                if (!staged.equals(file.blobId())) {
+                    modifiedStaged.add(fileName);
+                }
+            } else if (committed != null) {
+                if (!committed.equals(file.blobId())) {
+                    _modified.add(fileName);
+                }
+            } else {
+                _untracked.add(fileName);
+            }
+            if (removed.contains(fileName)) {
+                untrackedRemoved.add(fileName);
+            }
+        }
+        _deleted.addAll(deletedTracked);
+        _modified.addAll(modifiedStaged);
+        _untracked.addAll(untrackedRemoved);
+    }
+
+    /** Returns true iff FILENAME is staged for addition or tracked by the
+     *  head commit. */
+    private boolean tracked(String fileName) {
+        return _staging.getAdd().containsKey(fileName)
+            || _head.fileExistInCommit(fileName);
+    }
+
+    /** Adds the file FILE, named FILENAME, to the results of the walk,
+     *  with its blob id if it is tracked.  The stat data of untracked
+     *  files are not needed, and are not read. */
+    private void visit(String fileName, File file) {
+        if (!tracked(fileName)) {
+            _files.put(fileName, UNTRACKED);
+            return;
+        }
+        IndexEntry stat = IndexEntry.of(file, null);
+        if (stat == null) {
+            return;
+        }
+        String blobId = _staging.knownBlobId(fileName, stat);
+        if (blobId == null) {
+            blobId = BlobStore.idOf(file);
+            _hashed.put(fileName,
+                        new IndexEntry(stat.size(), stat.mtime(),
+                                       stat.ctime(), stat.inode(), blobId));
+        }
+        _files.put(fileName, new IndexEntry(stat.size(), stat.mtime(),
+                                            stat.ctime(), stat.inode(),
+                                            blobId));
+    }
+
+    /** The walk of a run of the entries of one folder.  A symbolic link
+     *  to a folder is visited as a file, not followed, so the walk cannot
+     *  leave the tree or loop. */
+    private class Walk extends RecursiveAction {
+
+        /** A walk of all of FOLDER, whose files are named by their names
+         *  after PREFIX. */
+        Walk(File folder, String prefix) {
+            this(folder, prefix, list(folder), 0, -1);
+        }
+
+        /** A walk of entries LO to HI of ENTRIES, the names of the entries
+         *  of FOLDER, which are named after PREFIX.  HI is -1 for all of
+         *  them. */
+        Walk(File folder, String prefix, String[] entries, int lo, int hi) {
+            _folder = folder;
+            _prefix = prefix;
+            _entries = entries;
+            _lo = lo;
+            _hi = hi < 0 ? entries.length : hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > SPLIT) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Walk(_folder, _prefix, _entries, _lo, mid),
+                          new Walk(_folder, _prefix, _entries, mid, _hi));
+                return;
+            }
+            ArrayList<Walk> folders = new ArrayList<>();
+            for (int k = _lo; k < _hi; k += 1) {
+                File entry = new File(_folder, _entries[k]);
+                if (Files.isDirectory(entry.toPath(),
+                                      LinkOption.NOFOLLOW_LINKS)) {
+                    if (!entry.toPath().normalize().equals(_skip)) {
+                        folders.add(new Walk(entry,
+                                             _prefix + _entries[k] + "/"));
+                    }
+                } else {
+                    visit(_prefix + _entries[k], entry);
+                }
+            }
+            invokeAll(folders);
+        }
+
+        /** The folder walked. */
+        private final File _folder;
+        /** What the names of its files are prefixed with. */
+        private final String _prefix;
+        /** The names of its entries, sorted. */
+        private final String[] _entries;
+        /** The first entry walked. */
+        private final int _lo;
+        /** One past the last entry walked. */
+        private final int _hi;
+
+        /** Identifies this version of the class; walks are never
+         *  serialized. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** Returns the sorted names of the entries of FOLDER. */
+    private static String[] list(File folder) {
+        String[] result = folder.list();
+        if (result == null) {
+            return new String[0];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Stands for an untracked file in the results of the walk. */
+    private static final IndexEntry UNTRACKED =
+        new IndexEntry(0, 0, 0, 0, null);
+
+    /** The folder left out of the walk. */
+    private final Path _skip;
+    /** The staging area. */
+    private final StagingArea _staging;
+    /** The head commit. */
+    private final Commit _head;
+    /** The files found by the walk, with the blob ids of tracked ones. */
+    private final ConcurrentHashMap<String, IndexEntry> _files =
+        new ConcurrentHashMap<>();
+    /** The files hashed by the walk, with their stat data. */
+    private final ConcurrentHashMap<String, IndexEntry> _hashed =
+        new ConcurrentHashMap<>();
+    /** The files in the deleted part of the modifications section. */
+    private final ArrayList<String> _deleted = new ArrayList<>();
+    /** The files in the modified part of the modifications section. */
+    private final ArrayList<String> _modified = new ArrayList<>();
+    /** The files of the untracked section. */
+    private final ArrayList<String> _untracked = new ArrayList<>();
+}
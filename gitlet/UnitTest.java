@@ -4,6 +4,33 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Qingyi Fang
  */
@@ -20,6 +47,1251 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** A file modified no earlier than the staging area was written has
+     *  its stat data dropped when the staging area is saved, so an edit in
+     *  the same clock tick that keeps its size is still seen by status. */
+    @Test
+    public void racyEditTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            Repository.init(dir);
+            File file = new File(dir, "f.txt");
+            writeContents(file, "one\n");
+            Repository repo = Repository.open(dir);
+            repo.add("f.txt");
+            repo.commit("One");
+            FileTime tick =
+                FileTime.fromMillis(System.currentTimeMillis() + 3600000);
+            Files.setLastModifiedTime(file.toPath(), tick);
+            assertEquals(List.of(), repo.status().modified());
+            StagingArea saved = Codec.decodeStaging(
+                readContents(join(dir, ".gitlet", "stagingArea")));
+            assertFalse(saved.getStat().containsKey("f.txt"));
+            writeContents(file, "two\n");
+            Files.setLastModifiedTime(file.toPath(), tick);
+            assertEquals(List.of("f.txt"),
+                         Repository.open(dir).status().modified());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Status walks subfolders, listing nested untracked files by their
+     *  paths and splitting wide folders, and puts deleted files that were
+     *  staged before those that were only tracked. */
+    @Test
+    public void statusScanTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            Repository.init(dir);
+            join(dir, "d", "e").mkdirs();
+            join(dir, "w").mkdirs();
+            writeContents(join(dir, "a.txt"), "a\n");
+            writeContents(join(dir, "d", "b.txt"), "b\n");
+            writeContents(join(dir, "d", "e", "c.txt"), "c\n");
+            Repository repo = Repository.open(dir);
+            repo.add("a.txt", "d/b.txt", "d/e/c.txt");
+            repo.commit("Three");
+            writeContents(join(dir, "s.txt"), "s\n");
+            repo.add("s.txt");
+            join(dir, "s.txt").delete();
+            join(dir, "d", "b.txt").delete();
+            writeContents(join(dir, "d", "e", "c.txt"), "changed\n");
+            writeContents(join(dir, "d", "e", "n.txt"), "n\n");
+            ArrayList<String> wide = new ArrayList<>();
+            for (int k = 0; k < 3 * StatusScan.SPLIT; k += 1) {
+                String name = String.format("w/%03d.txt", k);
+                writeContents(join(dir, name), name);
+                wide.add(name);
+            }
+            Status status = repo.status();
+            assertEquals(List.of("s.txt", "d/b.txt"), status.deleted());
+            assertEquals(List.of("d/e/c.txt"), status.modified());
+            ArrayList<String> untracked = new ArrayList<>();
+            untracked.add("d/e/n.txt");
+            untracked.addAll(wide);
+            assertEquals(untracked, status.untracked());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Commands sent to a daemon run on its repository and their output
+     *  comes back; ones that would read the daemon's standard input or
+     *  start another daemon are refused, and "daemon stop" stops it. */
+    @Test
+    public void daemonRoundTripTest() throws Exception {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            Repository repo = Repository.init(dir);
+            Thread daemon = new Thread(() -> {
+                try {
+                    Daemon.serve(repo);
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            });
+            daemon.start();
+            File socket = Daemon.socket(repo);
+            for (int k = 0; k < 100 && !socket.exists(); k += 1) {
+                Thread.sleep(50);
+            }
+            writeContents(join(dir, "f.txt"), "f\n");
+            assertEquals("", request(socket, "add", "f.txt"));
+            assertEquals("", request(socket, "commit", "Added f"));
+            String log = request(socket, "log");
+            assertTrue(log.startsWith("===\ncommit "));
+            assertTrue(log.contains("\nAdded f\n"));
+            assertEquals("The daemon can only run a batch from a file.\n",
+                         request(socket, "batch"));
+            assertEquals("A gitlet daemon is already running.\n",
+                         request(socket, "daemon"));
+            assertEquals("No command with that name exists.\n",
+                         request(socket, "frob"));
+            request(socket, "daemon", "stop");
+            daemon.join(Daemon.TIMEOUT);
+            assertFalse(daemon.isAlive());
+            assertFalse(socket.exists());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Returns the reply of the daemon listening on SOCKET to the command
+     *  ARGS. */
+    private static String request(File socket, String... args)
+        throws IOException {
+        try (SocketChannel channel = SocketChannel.open(
+                 UnixDomainSocketAddress.of(socket.toPath()))) {
+            for (String arg : args) {
+                channel.write(ByteBuffer.wrap(
+                    (arg + "\0").getBytes(StandardCharsets.UTF_8)));
+            }
+            channel.shutdownOutput();
+            return new String(Channels.newInputStream(channel).readAllBytes(),
+                              StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Batch lines are split into arguments as a shell splits words. */
+    @Test
+    public void batchSplitTest() {
+        assertArrayEquals(new String[] { "add", "a.txt", "b.txt" },
+                          Batch.split("  add\ta.txt   b.txt "));
+        assertArrayEquals(new String[] { "commit", "Two words" },
+                          Batch.split("commit \"Two words\""));
+        assertArrayEquals(new String[] { "commit", "It's \"here\"" },
+                          Batch.split("commit 'It'\\''s \"here\"'"));
+        assertArrayEquals(new String[] { "find", "a\\b\"c$" },
+                          Batch.split("find \"a\\\\b\\\"c$\""));
+        assertArrayEquals(new String[] { "a b", "" },
+                          Batch.split("a\\ b ''"));
+        assertArrayEquals(new String[] { "x\\y" },
+                          Batch.split("\"x\\y\""));
+        assertArrayEquals(new String[0], Batch.split("   "));
+        for (String bad : new String[] { "commit \"open", "rm 'x",
+                                         "add a\\" }) {
+            try {
+                Batch.split(bad);
+                fail("split " + bad);
+            } catch (GitletException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    /** On random sequences over a small alphabet, Diff finds a common
+     *  subsequence as long as the quadratic table does, for the whole
+     *  sequences and for their prefixes, its runs really match, and
+     *  withinEdits agrees with the edit distance the table gives. */
+    @Test
+    public void diffTest() {
+        Random random = new Random(61);
+        Diff diff = new Diff();
+        for (int trial = 0; trial < 200; trial += 1) {
+            List<String> seq1 = randomLines(random, random.nextInt(40));
+            List<String> seq2 = randomLines(random, random.nextInt(40));
+            int[][] table = llsTable(seq1, seq2);
+            int n = seq1.size(), m = seq2.size();
+            diff.setSequences(seq1, seq2);
+            assertEquals(table[n][m], diff.lls());
+            int[] common = diff.commonSubsequence();
+            for (int k = 0; k < common.length; k += 3) {
+                for (int i = 0; i < common[k + 2]; i += 1) {
+                    assertEquals(seq1.get(common[k] + i),
+                                 seq2.get(common[k + 1] + i));
+                }
+            }
+            int edits = n + m - 2 * table[n][m];
+            assertTrue(diff.withinEdits(edits));
+            assertEquals(edits == 0, diff.sequencesEqual());
+            if (edits > 0) {
+                assertFalse(diff.withinEdits(edits - 1));
+            }
+            int k1 = random.nextInt(n + 1), k2 = random.nextInt(m + 1);
+            assertEquals(table[k1][k2], diff.lls(k1, k2));
+        }
+    }
+
+    /** Returns N random lines, each one of four. */
+    private static List<String> randomLines(Random random, int n) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int k = 0; k < n; k += 1) {
+            result.add("line " + random.nextInt(4));
+        }
+        return result;
+    }
+
+    /** Returns the table whose entry [I][J] is the length of the longest
+     *  common subsequence of the first I items of SEQ1 and the first J of
+     *  SEQ2. */
+    private static int[][] llsTable(List<String> seq1, List<String> seq2) {
+        int[][] result = new int[seq1.size() + 1][seq2.size() + 1];
+        for (int i = 1; i <= seq1.size(); i += 1) {
+            for (int j = 1; j <= seq2.size(); j += 1) {
+                result[i][j] = seq1.get(i - 1).equals(seq2.get(j - 1))
+                    ? result[i - 1][j - 1] + 1
+                    : Math.max(result[i - 1][j], result[i][j - 1]);
+            }
+        }
+        return result;
+    }
+
+    /** Commits with no, one and two parents decode to what was encoded,
+     *  and encode again to the same bytes. */
+    @Test
+    public void codecCommitTest() {
+        String[][] parents = {
+            { null, null }, { sha1("p1"), null }, { sha1("p1"), sha1("p2") }
+        };
+        for (String[] parent : parents) {
+            Commit commit = new Commit("Message \u00e9\ud83d\ude00\nline",
+                                       parent[0], parent[1], 1234567890123L);
+            commit.getContents().put("a.txt", sha1("a"));
+            commit.getContents().put("d/\u00fc.txt", sha1("u"));
+            byte[] bytes = Codec.encode(commit);
+            Commit decoded = Codec.decodeCommit(bytes);
+            assertEquals(commit.getMessage(), decoded.getMessage());
+            assertEquals(commit.getParent1(), decoded.getParent1());
+            assertEquals(commit.getParent2(), decoded.getParent2());
+            assertEquals(commit.getTime(), decoded.getTime());
+            assertEquals(commit.getContents(), decoded.getContents());
+            assertArrayEquals(bytes, Codec.encode(decoded));
+        }
+    }
+
+    /** A staging area decodes to what was encoded, including paths that
+     *  share a prefix ending inside a surrogate pair, and encodes again to
+     *  the same bytes. */
+    @Test
+    public void codecStagingTest() {
+        StagingArea staging = new StagingArea();
+        staging.getAdd().put("a.txt", sha1("a"));
+        staging.getAdd().put("ab.txt", sha1("ab"));
+        staging.getAdd().put("d/\ud83d\ude00.txt", sha1("smile"));
+        staging.getRm().add("d/\ud83d\ude01.txt");
+        staging.getRm().add("z.txt");
+        staging.getStat().put("a.txt",
+                              new IndexEntry(3, -1L, Long.MAX_VALUE, 42,
+                                             sha1("a")));
+        staging.getStat().put("s.txt",
+                              new IndexEntry(0, 5, 6, 0, sha1("s")));
+        byte[] bytes = Codec.encode(staging);
+        StagingArea decoded = Codec.decodeStaging(bytes);
+        assertEquals(staging.getAdd(), decoded.getAdd());
+        assertEquals(new TreeSet<>(staging.getRm()),
+                     new TreeSet<>(decoded.getRm()));
+        assertEquals(staging.getStat().keySet(),
+                     decoded.getStat().keySet());
+        for (String path : staging.getStat().keySet()) {
+            IndexEntry entry = staging.getStat().get(path);
+            IndexEntry got = decoded.getStat().get(path);
+            assertTrue(entry.sameStat(got));
+            assertEquals(entry.blobId(), got.blobId());
+        }
+        assertArrayEquals(bytes, Codec.encode(decoded));
+        assertArrayEquals(Codec.encode(new StagingArea()),
+                          Codec.encode(Codec.decodeStaging(
+                              Codec.encode(new StagingArea()))));
+    }
+
+    /** Bytes written by Java serialization, as the first gitlet saved its
+     *  objects, are refused rather than misread. */
+    @Test
+    public void codecRefusesSerializedTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject("commit");
+        }
+        try {
+            Codec.decodeCommit(bytes.toByteArray());
+            fail("decoded a serialized object");
+        } catch (GitletException excp) {
+            assertEquals("Gitlet object in the format of an older gitlet.",
+                         excp.getMessage());
+        }
+    }
+
+    /** A repository in a format this gitlet did not write, or with no
+     *  format file and no serialized branches file to upgrade from, is
+     *  refused rather than misread. */
+    @Test
+    public void unknownFormatTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            Repository.init(dir);
+            File format = join(dir, ".gitlet", "format");
+            assertEquals(Repository.FORMAT + "\n",
+                         readContentsAsString(format));
+            writeContents(format, "5\n");
+            try {
+                Repository.open(dir);
+                fail("opened format 5");
+            } catch (GitletException excp) {
+                assertEquals("Unsupported repository format 5.",
+                             excp.getMessage());
+            }
+            format.delete();
+            try {
+                Repository.open(dir);
+                fail("opened a repository with no format file");
+            } catch (GitletException excp) {
+                assertEquals("Unsupported repository format: no format "
+                             + "file.", excp.getMessage());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Several threads reading the same delta blob at once all get its
+     *  contents, and the cache counts each cached blob once. */
+    @Test
+    public void concurrentDeltaReadTest() throws Exception {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            ObjectStore objects =
+                new ObjectStore(join(dir, "blobs"), join(dir, "packs"),
+                                "blobs");
+            StringBuilder text = new StringBuilder();
+            for (int k = 0; k < 200; k += 1) {
+                text.append("line ").append(k).append("\n");
+            }
+            byte[] base = text.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] edited = text.toString().replace("line 100\n", "new\n")
+                .getBytes(StandardCharsets.UTF_8);
+            BlobStore writer = new BlobStore(objects);
+            String baseId = writer.write(base, null);
+            String id = writer.write(edited, baseId);
+            assertTrue(objects.read(id).length < edited.length / 2);
+            for (int round = 0; round < 20; round += 1) {
+                BlobStore blobs = new BlobStore(objects);
+                Thread[] readers = new Thread[8];
+                boolean[] ok = new boolean[readers.length];
+                for (int t = 0; t < readers.length; t += 1) {
+                    int which = t;
+                    readers[t] = new Thread(() -> {
+                        ok[which] = Arrays.equals(edited, blobs.read(id));
+                    });
+                }
+                for (Thread reader : readers) {
+                    reader.start();
+                }
+                for (Thread reader : readers) {
+                    reader.join();
+                }
+                for (boolean same : ok) {
+                    assertTrue(same);
+                }
+                assertEquals(base.length + edited.length,
+                             blobs.cacheSize());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Adding a folder of many files, some alike, stages every one of
+     *  them, by its path, with the blob id of its contents, and adding
+     *  them again after changing some stages only what changed. */
+    @Test
+    public void parallelAddTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            Repository repo = Repository.init(dir);
+            ArrayList<String> names = new ArrayList<>();
+            for (int k = 0; k < MANY_FILES; k += 1) {
+                String name = String.format("many/%d/%03d.txt", k % 4, k);
+                join(dir, "many", Integer.toString(k % 4)).mkdirs();
+                writeContents(join(dir, name), "file " + (k % 50) + "\n");
+                names.add(name);
+            }
+            names.sort(null);
+            repo.add("many");
+            assertEquals(names, repo.status().staged());
+            repo.commit("Many");
+            Commit head = repo.getCommit(repo.log().get(0));
+            assertEquals(names, head.getAllFileNames());
+            for (String name : names) {
+                assertEquals(BlobStore.idOf(join(dir, name)),
+                             head.getBlobId(name));
+            }
+            ArrayList<String> changed = new ArrayList<>();
+            for (int k = 0; k < names.size(); k += 7) {
+                writeContents(join(dir, names.get(k)), "changed " + k);
+                changed.add(names.get(k));
+            }
+            repo.add("many");
+            assertEquals(changed, repo.status().staged());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Checking out a branch, and resetting to a commit, over many files
+     *  writes every file with the contents it has there, deletes those
+     *  it does not track, and leaves status clean. */
+    @Test
+    public void parallelCheckoutTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            Repository repo = Repository.init(dir);
+            join(dir, "many").mkdirs();
+            TreeMap<String, String> master = new TreeMap<>();
+            for (int k = 0; k < MANY_FILES; k += 1) {
+                master.put(String.format("many/%03d.txt", k),
+                           "master " + k + "\n");
+            }
+            writeAll(dir, master);
+            repo.add("many");
+            repo.commit("Master");
+            repo.branch("other");
+            repo.checkoutByBranch("other");
+            TreeMap<String, String> other = new TreeMap<>(master);
+            for (int k = 0; k < MANY_FILES; k += 3) {
+                other.put(String.format("many/%03d.txt", k), "other " + k);
+            }
+            other.put("many/new.txt", "new");
+            other.remove("many/001.txt");
+            writeAll(dir, other);
+            repo.rm("many/001.txt");
+            repo.add("many");
+            repo.commit("Other");
+            String otherSha1 = repo.log().get(0);
+            repo.checkoutByBranch("master");
+            assertTree(dir, master);
+            assertTrue(repo.status().modified().isEmpty());
+            repo.reset(otherSha1);
+            assertTree(dir, other);
+            Status status = repo.status();
+            assertTrue(status.modified().isEmpty());
+            assertTrue(status.deleted().isEmpty());
+            assertTrue(status.untracked().isEmpty());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Writes each of FILES, paths under DIR mapped to contents. */
+    private static void writeAll(File dir, Map<String, String> files) {
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            writeContents(join(dir, file.getKey()), file.getValue());
+        }
+    }
+
+    /** Checks that the files in DIR/many are exactly FILES, paths under
+     *  DIR mapped to contents. */
+    private static void assertTree(File dir, Map<String, String> files) {
+        TreeMap<String, String> found = new TreeMap<>();
+        for (String name : plainFilenamesIn(join(dir, "many"))) {
+            found.put("many/" + name,
+                      readContentsAsString(join(dir, "many", name)));
+        }
+        assertEquals(files, found);
+    }
+
+    /** Number of files the tests of bulk add and checkout use. */
+    private static final int MANY_FILES = 300;
+
+    /** Commit times format and parse back the same from several threads
+     *  at once, as Repository objects on different threads do. */
+    @Test
+    public void timestampTest() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        boolean[] ok = new boolean[threads.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            int which = t;
+            threads[t] = new Thread(() -> {
+                boolean same = true;
+                for (long n = 0; n < 1000; n += 1) {
+                    long time = (which * 1000 + n) * 86_399_000L;
+                    Commit commit = new Commit("m", "p", null, time);
+                    same &= Commit.parseTimestamp(commit.getTimestamp())
+                        == time;
+                }
+                ok[which] = same;
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (boolean same : ok) {
+            assertTrue(same);
+        }
+        assertEquals(0, Commit.parseTimestamp(
+            new Commit("initial commit", null, null).getTimestamp()));
+    }
+
+    /** Objects read back the same while loose, after pack() moves them
+     *  into a pack, after a second pack() appends more, and from a store
+     *  newly opened on the same files. */
+    @Test
+    public void packTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            File loose = join(dir, "objects");
+            File packs = join(dir, "packs");
+            ObjectStore objects = new ObjectStore(loose, packs, "objects");
+            TreeMap<String, byte[]> stored = new TreeMap<>();
+            for (int k = 0; k < 200; k += 1) {
+                if (k == 120) {
+                    assertEquals(120, looseCount(loose));
+                    objects.pack();
+                    assertEquals(0, looseCount(loose));
+                    assertTrue(join(packs, "objects.pack").isFile());
+                    assertTrue(join(packs, "objects.idx").isFile());
+                }
+                byte[] contents =
+                    ("object " + k).getBytes(StandardCharsets.UTF_8);
+                stored.put(sha1(contents), contents);
+                objects.write(sha1(contents), contents);
+            }
+            assertEquals(80, looseCount(loose));
+            assertEquals(new ArrayList<>(stored.keySet()), objects.ids());
+            objects.pack();
+            assertEquals(0, looseCount(loose));
+            ObjectStore reopened = new ObjectStore(loose, packs, "objects");
+            for (Map.Entry<String, byte[]> object : stored.entrySet()) {
+                assertArrayEquals(object.getValue(),
+                                  objects.read(object.getKey()));
+                assertArrayEquals(object.getValue(),
+                                  reopened.read(object.getKey()));
+            }
+            assertEquals(new ArrayList<>(stored.keySet()), reopened.ids());
+            assertFalse(reopened.contains(sha1("missing")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** packIfNeeded() leaves objects loose until the sampled subfolder
+     *  holds more than its share of LOOSE_LIMIT, and then packs them. */
+    @Test
+    public void packIfNeededTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            File loose = join(dir, "objects");
+            ObjectStore objects =
+                new ObjectStore(loose, join(dir, "packs"), "objects");
+            int share = ObjectStore.LOOSE_LIMIT / 256;
+            ArrayList<String> ids = new ArrayList<>();
+            for (int k = 0; k <= share; k += 1) {
+                String id = String.format("%s%038x",
+                                          ObjectStore.SAMPLE_SHARD, k);
+                objects.write(id, ("object " + k)
+                              .getBytes(StandardCharsets.UTF_8));
+                ids.add(id);
+                objects.packIfNeeded();
+                assertEquals(k < share ? k + 1 : 0, looseCount(loose));
+            }
+            for (int k = 0; k <= share; k += 1) {
+                assertEquals("object " + k,
+                             new String(objects.read(ids.get(k)),
+                                        StandardCharsets.UTF_8));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Returns the number of loose objects in the subfolders of
+     *  FOLDER. */
+    private static long looseCount(File folder) throws IOException {
+        if (!folder.isDirectory()) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(folder.toPath(), 2)) {
+            return files.filter(path -> path.getNameCount()
+                                == folder.toPath().getNameCount() + 2
+                                && Files.isRegularFile(path)).count();
+        }
+    }
+
+    /** Each version of a file stored against the one before is a delta one
+     *  deeper than its base, up to MAX_DEPTH, after which a version is
+     *  stored in full and starts a new chain.  Every version rebuilds to
+     *  its contents, from a fresh cache and after packing. */
+    @Test
+    public void deltaChainTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            ObjectStore objects =
+                new ObjectStore(join(dir, "blobs"), join(dir, "packs"),
+                                "blobs");
+            BlobStore blobs = new BlobStore(objects);
+            ArrayList<String> lines = new ArrayList<>();
+            for (int k = 0; k < 100; k += 1) {
+                lines.add("line " + k + "\n");
+            }
+            ArrayList<byte[]> versions = new ArrayList<>();
+            ArrayList<String> ids = new ArrayList<>();
+            String base = null;
+            for (int v = 0; v <= BlobStore.MAX_DEPTH + 2; v += 1) {
+                lines.set(v * 7, "version " + v + "\n");
+                byte[] contents = String.join("", lines)
+                    .getBytes(StandardCharsets.UTF_8);
+                base = blobs.write(contents, base);
+                versions.add(contents);
+                ids.add(base);
+            }
+            for (int v = 0; v < ids.size(); v += 1) {
+                byte[] stored = objects.read(ids.get(v));
+                int depth = v % (BlobStore.MAX_DEPTH + 1);
+                if (depth == 0) {
+                    assertEquals(BlobStore.FULL, stored[0]);
+                } else {
+                    assertEquals(BlobStore.DELTA, stored[0]);
+                    assertEquals(depth, stored[2]);
+                }
+            }
+            for (int round = 0; round < 2; round += 1) {
+                BlobStore fresh = new BlobStore(objects);
+                for (int v = ids.size() - 1; v >= 0; v -= 1) {
+                    assertArrayEquals(versions.get(v),
+                                      fresh.read(ids.get(v)));
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    fresh.copyTo(ids.get(v), out);
+                    assertArrayEquals(versions.get(v), out.toByteArray());
+                }
+                objects.pack();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Objects are stored deflated behind the DEFLATED codec byte, both
+     *  when written whole and when streamed, while objects written before
+     *  compression, with no codec byte, still read back, loose and
+     *  packed. */
+    @Test
+    public void compressionTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            File loose = join(dir, "blobs");
+            ObjectStore objects =
+                new ObjectStore(loose, join(dir, "packs"), "blobs");
+            BlobStore blobs = new BlobStore(objects);
+            byte[] text = "gitlet\n".repeat(10000)
+                .getBytes(StandardCharsets.UTF_8);
+            String id = blobs.write(text, null);
+            File file = join(loose, id.substring(0, 2), id.substring(2));
+            byte[] stored = readContents(file);
+            assertEquals(ObjectStore.DEFLATED, stored[0]);
+            assertTrue(stored.length < text.length / 10);
+            byte[] large = new byte[3 * ObjectStore.BUFFER_SIZE + 1];
+            new Random(6).nextBytes(large);
+            File source = join(dir, "large");
+            writeContents(source, (Object) large);
+            String largeId = blobs.write(source, null);
+            assertEquals(sha1((Object) large), largeId);
+            assertEquals(ObjectStore.DEFLATED, readContents(join(
+                loose, largeId.substring(0, 2),
+                largeId.substring(2)))[0]);
+            byte[] old = "written before compression\n"
+                .getBytes(StandardCharsets.UTF_8);
+            String oldId = sha1((Object) old);
+            File oldFile = join(loose, oldId.substring(0, 2),
+                                oldId.substring(2));
+            oldFile.getParentFile().mkdirs();
+            writeContents(oldFile, new byte[] {
+                    BlobStore.FULL, Codec.VERSION }, old);
+            for (int round = 0; round < 2; round += 1) {
+                BlobStore fresh = new BlobStore(objects);
+                assertArrayEquals(text, fresh.read(id));
+                assertArrayEquals(large, fresh.read(largeId));
+                assertArrayEquals(old, fresh.read(oldId));
+                try (ObjectStore.ObjectStream in = objects.open(id)) {
+                    assertEquals(text.length + 2, in.size());
+                }
+                objects.pack();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** A repository keeps each loose commit and blob in the subfolder
+     *  named by the first two hex digits of its sha1, with nothing else
+     *  in the object folders, and finds objects by any prefix. */
+    @Test
+    public void fanoutTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            Repository repo = Repository.init(dir);
+            for (int k = 0; k < 20; k += 1) {
+                writeContents(join(dir, "f" + k + ".txt"), "file " + k);
+                repo.add("f" + k + ".txt");
+            }
+            repo.commit("Twenty files");
+            File commits = join(dir, ".gitlet", "commits");
+            File blobs = join(dir, ".gitlet", "blobs");
+            Commit head = repo.getCommit(repo.log().get(0));
+            ArrayList<String> blobIds = new ArrayList<>();
+            for (String name : head.getAllFileNames()) {
+                blobIds.add(head.getBlobId(name));
+            }
+            for (String id : repo.log()) {
+                assertTrue(join(commits, id.substring(0, 2),
+                                id.substring(2)).isFile());
+            }
+            for (String id : blobIds) {
+                assertTrue(join(blobs, id.substring(0, 2),
+                                id.substring(2)).isFile());
+            }
+            assertEquals(repo.log().size(), looseCount(commits));
+            assertEquals(blobIds.size(), looseCount(blobs));
+            for (File folder : new File[] { commits, blobs }) {
+                for (String name : folder.list()) {
+                    assertTrue(name.matches("[0-9a-f]{2}"));
+                    assertTrue(join(folder, name).isDirectory());
+                }
+            }
+            ObjectStore store =
+                new ObjectStore(blobs, join(dir, ".gitlet", "packs"),
+                                "blobs");
+            for (String id : blobIds) {
+                assertTrue(store.idsWithPrefix(id.substring(0, 1))
+                           .contains(id));
+                assertEquals(List.of(id),
+                             store.idsWithPrefix(id.substring(0, 12)));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** A file of at least CHUNK_THRESHOLD bytes is stored as a list of
+     *  chunks, each but the last of MIN_CHUNK to MAX_CHUNK bytes.  After an
+     *  edit in place, and after an insertion that shifts the rest of the
+     *  file, only the chunks around the change are new. */
+    @Test
+    public void chunkTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            ObjectStore objects =
+                new ObjectStore(join(dir, "blobs"), join(dir, "packs"),
+                                "blobs");
+            BlobStore blobs = new BlobStore(objects);
+            byte[] original = new byte[(int) BlobStore.CHUNK_THRESHOLD
+                                       + (1 << 20)];
+            new Random(9).nextBytes(original);
+            byte[] edited = original.clone();
+            Arrays.fill(edited, 2 << 20, (2 << 20) + 100, (byte) 0);
+            byte[] inserted = new byte[original.length + 10];
+            System.arraycopy(original, 0, inserted, 0, 1 << 20);
+            System.arraycopy(original, 1 << 20, inserted, (1 << 20) + 10,
+                             original.length - (1 << 20));
+            List<String> first = null;
+            for (byte[] contents : List.of(original, edited, inserted)) {
+                File file = join(dir, "large");
+                writeContents(file, (Object) contents);
+                int before = objects.ids().size();
+                String id = blobs.write(file, null);
+                List<String> chunks = chunkIds(objects.read(id),
+                                               contents.length);
+                if (first == null) {
+                    first = chunks;
+                    assertTrue(chunks.size() > 4);
+                } else {
+                    int added = 0;
+                    for (String chunk : chunks) {
+                        added += first.contains(chunk) ? 0 : 1;
+                    }
+                    assertTrue(added <= 2);
+                    assertEquals(before + added + 1, objects.ids().size());
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                blobs.copyTo(id, out);
+                assertArrayEquals(contents, out.toByteArray());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Returns the chunk ids listed in STORED, the stored form of a
+     *  chunked blob of SIZE bytes, checking the chunk sizes. */
+    private static List<String> chunkIds(byte[] stored, int size) {
+        assertEquals(BlobStore.CHUNKED, stored[0]);
+        Codec.Decoder in = new Codec.Decoder(stored, BlobStore.CHUNKED);
+        ArrayList<String> result = new ArrayList<>();
+        int total = 0;
+        for (int n = in.readVarint(); n > 0; n -= 1) {
+            result.add(in.readId());
+            int chunk = in.readVarint();
+            assertTrue(chunk <= BlobStore.MAX_CHUNK);
+            assertTrue(n == 1 || chunk >= BlobStore.MIN_CHUNK);
+            total += chunk;
+        }
+        assertEquals(size, total);
+        return result;
+    }
+
+    /** idsWithPrefix finds the objects with a prefix among both packed
+     *  and loose objects, stopping at LIMIT, so that two matches, one in
+     *  each, make a prefix ambiguous. */
+    @Test
+    public void prefixTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            ObjectStore objects =
+                new ObjectStore(join(dir, "commits"), join(dir, "packs"),
+                                "commits");
+            String packed1 = "ab12" + "0".repeat(36);
+            String packed2 = "ab34" + "0".repeat(36);
+            String loose1 = "ab12" + "f".repeat(36);
+            String loose2 = "cd56" + "0".repeat(36);
+            objects.write(packed1, new byte[] { 1 });
+            objects.write(packed2, new byte[] { 2 });
+            objects.pack();
+            objects.write(loose1, new byte[] { 3 });
+            objects.write(loose2, new byte[] { 4 });
+            assertEquals(List.of(packed1, loose1),
+                         objects.idsWithPrefix("ab12", 2));
+            assertEquals(List.of(packed1),
+                         objects.idsWithPrefix("ab120", 2));
+            assertEquals(List.of(loose1), objects.idsWithPrefix("ab12f", 2));
+            assertEquals(List.of(packed2), objects.idsWithPrefix("ab3", 2));
+            assertEquals(List.of(loose2), objects.idsWithPrefix("c", 2));
+            assertEquals(List.of(packed1, loose1),
+                         objects.idsWithPrefix("ab", 2));
+            assertEquals(3, objects.idsWithPrefix("ab").size());
+            assertEquals(List.of(packed1, loose1, packed2, loose2),
+                         objects.ids());
+            assertTrue(objects.idsWithPrefix("ee", 2).isEmpty());
+            assertTrue(objects.idsWithPrefix("AB", 2).isEmpty());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Commands given a unique prefix of a commit id use that commit, and
+     *  those given no match say so. */
+    @Test
+    public void commitPrefixTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            Repository repo = Repository.init(dir);
+            writeContents(join(dir, "f.txt"), "one");
+            repo.add("f.txt");
+            repo.commit("One");
+            String one = repo.log().get(0);
+            writeContents(join(dir, "f.txt"), "two");
+            repo.add("f.txt");
+            repo.commit("Two");
+            repo.checkoutByCommitID(one.substring(0, 8), "f.txt");
+            assertEquals("one", readContentsAsString(join(dir, "f.txt")));
+            repo.reset(one.substring(0, 6));
+            assertEquals(one, repo.log().get(0));
+            try {
+                repo.reset("0".repeat(12));
+                fail("reset to a missing commit");
+            } catch (GitletException excp) {
+                assertEquals("No commit with that id exists.",
+                             excp.getMessage());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Messages are found by whole message, by word ignoring case, and by
+     *  pattern, both among the records merged into the index once the
+     *  tail passes TAIL_BYTES and among those still in the tail. */
+    @Test
+    public void messageIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            File column = join(dir, "messages");
+            File index = join(dir, "messages.idx");
+            MessageIndex messages = new MessageIndex(column, index);
+            int indexed = 0;
+            for (int k = 0; !index.isFile(); k += 1) {
+                messages.add(sha1("commit " + k),
+                             "Change number " + k + " of many"
+                             + " ".repeat(50));
+                indexed = k + 1;
+            }
+            assertTrue(column.length() > MessageIndex.TAIL_BYTES);
+            messages.add(sha1("tail"), "Tail commit");
+            messages.add(sha1("tail 2"), "tail Commit");
+            assertEquals(List.of(sha1("commit 7")),
+                         messages.withMessage(
+                             "Change number 7 of many" + " ".repeat(50)));
+            assertEquals(List.of(sha1("tail")),
+                         messages.withMessage("Tail commit"));
+            assertTrue(messages.withMessage("Tail").isEmpty());
+            assertEquals(new TreeSet<>(List.of(sha1("tail"),
+                                               sha1("tail 2"))),
+                         new TreeSet<>(messages.withWord("TAIL")));
+            assertEquals(indexed, messages.withWord("many").size());
+            assertEquals(List.of(sha1("commit 12")),
+                         messages.withWord("12"));
+            assertEquals(new TreeSet<>(List.of(sha1("commit 3"),
+                                               sha1("commit 33"))),
+                         new TreeSet<>(messages.matching(
+                             Pattern.compile("number 3{1,2} "))));
+            assertEquals(2, messages.matching(
+                             Pattern.compile("(?i)^tail")).size());
+            MessageIndex reopened = new MessageIndex(column, index);
+            assertEquals(List.of(sha1("tail 2")),
+                         reopened.withMessage("tail Commit"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** A record torn off part way is ignored by readers and cut off by
+     *  the next add(), so that the records after it are read right. */
+    @Test
+    public void messageIndexTornTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            File column = join(dir, "messages");
+            MessageIndex messages =
+                new MessageIndex(column, join(dir, "messages.idx"));
+            messages.add(sha1("one"), "One");
+            messages.add(sha1("two"), "Two");
+            long whole = column.length();
+            ByteBuffer torn = ByteBuffer.allocate(Codec.ID_BYTES
+                                                  + Integer.BYTES + 3);
+            torn.put(Codec.idToBytes(sha1("torn"))).putInt(50);
+            torn.put("Tor".getBytes(StandardCharsets.UTF_8));
+            Files.write(column.toPath(), torn.array(),
+                        StandardOpenOption.APPEND);
+            assertEquals(List.of(sha1("two")), messages.withMessage("Two"));
+            assertEquals(2, messages.matching(Pattern.compile("")).size());
+            messages.add(sha1("three"), "Three");
+            assertEquals(whole + Codec.ID_BYTES + Integer.BYTES + 5,
+                         column.length());
+            assertEquals(List.of(sha1("three")),
+                         messages.withMessage("Three"));
+            assertEquals(3, messages.matching(Pattern.compile("")).size());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Every commit added to the graph is found by its sha1, with the
+     *  right parents, time and generation, whether it is in the lookup
+     *  file, merged in once the tail passed TAIL_RECORDS, or still in the
+     *  tail; likewise after reopening, and after rewriting the graph from
+     *  the commits. */
+    @Test
+    public void commitGraphTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            File file = join(dir, "commit-graph");
+            File lookup = join(dir, "commit-graph.lookup");
+            CommitGraph graph = new CommitGraph(file, lookup);
+            int n = CommitGraph.TAIL_RECORDS + 100;
+            String[] ids = new String[n];
+            int[] parent1 = new int[n];
+            int[] parent2 = new int[n];
+            int[] generation = new int[n];
+            TreeMap<String, Commit> commits = new TreeMap<>();
+            for (int k = 0; k < n; k += 1) {
+                ids[k] = sha1("commit " + k);
+                parent1[k] = k == 0 ? -1 : k == 1 ? 0 : k - 2;
+                parent2[k] = k % 50 == 0 && k > 0 ? k - 1 : -1;
+                generation[k] = 1 + Math.max(
+                    parent1[k] < 0 ? 0 : generation[parent1[k]],
+                    parent2[k] < 0 ? 0 : generation[parent2[k]]);
+                String p1 = parent1[k] < 0 ? null : ids[parent1[k]];
+                String p2 = parent2[k] < 0 ? null : ids[parent2[k]];
+                graph.add(ids[k], p1, p2, 1000L * k);
+                commits.put(ids[k], new Commit("m", p1, p2, 1000L * k));
+            }
+            assertTrue(lookup.isFile());
+            for (int round = 0; round < 3; round += 1) {
+                assertEquals(n, graph.size());
+                for (int k = 0; k < n; k += 1) {
+                    int pos = graph.position(ids[k]);
+                    assertEquals(ids[k], graph.id(pos));
+                    assertEquals(1000L * k, graph.time(pos));
+                    assertEquals(generation[k], graph.generation(pos));
+                    assertEquals(parent1[k] < 0 ? CommitGraph.NONE
+                                 : graph.position(ids[parent1[k]]),
+                                 graph.parent1(pos));
+                    assertEquals(parent2[k] < 0 ? CommitGraph.NONE
+                                 : graph.position(ids[parent2[k]]),
+                                 graph.parent2(pos));
+                    assertTrue(graph.parent1(pos) < pos);
+                    assertTrue(graph.parent2(pos) < pos);
+                }
+                assertEquals(CommitGraph.NONE, graph.position(sha1("no")));
+                if (round == 0) {
+                    graph = new CommitGraph(file, lookup);
+                } else {
+                    graph.rewrite(commits);
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** In a criss-cross history, where each of two branches has merged
+     *  the other, mergeBase picks the common ancestor that a breadth-first
+     *  walk from the head, first parents first, meets first. */
+    @Test
+    public void crissCrossMergeBaseTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            CommitGraph graph =
+                new CommitGraph(join(dir, "commit-graph"),
+                                join(dir, "commit-graph.lookup"));
+            graph.add(sha1("root"), null, null, 0);
+            graph.add(sha1("b"), sha1("root"), null, 1);
+            graph.add(sha1("c"), sha1("root"), null, 2);
+            graph.add(sha1("d"), sha1("b"), sha1("c"), 3);
+            graph.add(sha1("e"), sha1("c"), sha1("b"), 4);
+            graph.add(sha1("d2"), sha1("d"), null, 5);
+            graph.add(sha1("e2"), sha1("e"), null, 6);
+            int b = graph.position(sha1("b"));
+            int c = graph.position(sha1("c"));
+            int d2 = graph.position(sha1("d2"));
+            int e2 = graph.position(sha1("e2"));
+            assertEquals(b, graph.mergeBase(d2, e2));
+            assertEquals(c, graph.mergeBase(e2, d2));
+            assertEquals(b, graph.mergeBase(d2, b));
+            assertEquals(b, graph.mergeBase(b, d2));
+            graph.add(sha1("lone"), null, null, 7);
+            assertEquals(CommitGraph.NONE,
+                         graph.mergeBase(d2, graph.position(sha1("lone"))));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** On random histories full of criss-cross merges, mergeBase and
+     *  isAncestor agree with a plain breadth-first search of the whole
+     *  history. */
+    @Test
+    public void randomMergeBaseTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            CommitGraph graph =
+                new CommitGraph(join(dir, "commit-graph"),
+                                join(dir, "commit-graph.lookup"));
+            Random random = new Random(14);
+            int n = 200;
+            int[][] parents = new int[n][];
+            for (int k = 0; k < n; k += 1) {
+                if (k == 0 || random.nextInt(20) == 0) {
+                    parents[k] = new int[0];
+                } else if (k > 1 && random.nextInt(3) == 0) {
+                    int p1 = k - 1 - random.nextInt(Math.min(k, 8));
+                    int p2 = k - 1 - random.nextInt(Math.min(k, 8));
+                    parents[k] = p1 == p2 ? new int[] { p1 }
+                        : new int[] { p1, p2 };
+                } else {
+                    parents[k] = new int[] {
+                        k - 1 - random.nextInt(Math.min(k, 3)) };
+                }
+                graph.add(sha1("commit " + k),
+                          parents[k].length > 0
+                          ? sha1("commit " + parents[k][0]) : null,
+                          parents[k].length > 1
+                          ? sha1("commit " + parents[k][1]) : null, k);
+            }
+            for (int head = 0; head < n; head += 3) {
+                for (int other = 0; other < n; other += 5) {
+                    assertEquals(ancestors(parents, head).contains(other),
+                                 graph.isAncestor(other, head));
+                    assertEquals(naiveMergeBase(parents, head, other),
+                                 graph.mergeBase(head, other));
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Returns START and its ancestors in the history whose commit K has
+     *  the parents PARENTS[K]. */
+    private static TreeSet<Integer> ancestors(int[][] parents, int start) {
+        TreeSet<Integer> result = new TreeSet<>();
+        ArrayList<Integer> pending = new ArrayList<>(List.of(start));
+        while (!pending.isEmpty()) {
+            int k = pending.remove(pending.size() - 1);
+            if (result.add(k)) {
+                for (int parent : parents[k]) {
+                    pending.add(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the split point of HEAD and OTHER, as splitPointSha1 found
+     *  it before the commit graph: OTHER if it is an ancestor of HEAD,
+     *  and otherwise the first of OTHER's ancestors met in a breadth-first
+     *  walk from HEAD, or -1. */
+    private static int naiveMergeBase(int[][] parents, int head,
+                                      int other) {
+        TreeSet<Integer> otherSide = ancestors(parents, other);
+        if (ancestors(parents, head).contains(other)) {
+            return other;
+        }
+        TreeSet<Integer> seen = new TreeSet<>();
+        ArrayList<Integer> queue = new ArrayList<>(List.of(head));
+        for (int i = 0; i < queue.size(); i += 1) {
+            int k = queue.get(i);
+            if (!seen.add(k)) {
+                continue;
+            }
+            if (otherSide.contains(k)) {
+                return k;
+            }
+            for (int parent : parents[k]) {
+                queue.add(parent);
+            }
+        }
+        return CommitGraph.NONE;
+    }
+
+    /** A branch whose lock file exists cannot be moved, and a branch or
+     *  detached HEAD moved by another command since this one read it is
+     *  not overwritten; neither failure leaves a lock behind. */
+    @Test
+    public void refLockTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            File head = join(dir, "HEAD");
+            File heads = join(dir, "heads");
+            File packed = join(dir, "packed-refs");
+            RefStore refs = new RefStore(head, heads, packed);
+            refs.setCurrentBranch("master");
+            refs.setBranch("master", sha1("a"));
+            File lock = join(heads, "master.lock");
+            writeContents(lock, "");
+            try {
+                refs.setBranch("master", sha1("b"));
+                fail("moved a locked branch");
+            } catch (GitletException excp) {
+                assertEquals("Could not lock master; another gitlet "
+                             + "command may be running.",
+                             excp.getMessage());
+            }
+            lock.delete();
+            RefStore other = new RefStore(head, heads, packed);
+            assertEquals(sha1("a"), refs.head());
+            assertEquals(sha1("a"), other.head());
+            refs.moveHead(sha1("a"), sha1("b"));
+            try {
+                other.moveHead(sha1("a"), sha1("c"));
+                fail("overwrote a moved branch");
+            } catch (GitletException excp) {
+                assertEquals("Branch master has moved; another gitlet "
+                             + "command may have run.", excp.getMessage());
+            }
+            assertEquals(sha1("b"),
+                         new RefStore(head, heads, packed).head());
+            writeContents(head, sha1("d") + "\n");
+            refs.reload();
+            other.reload();
+            assertNull(refs.currentBranch());
+            assertEquals(sha1("d"), other.head());
+            refs.moveHead(sha1("d"), sha1("e"));
+            try {
+                other.moveHead(sha1("d"), sha1("f"));
+                fail("overwrote a moved HEAD");
+            } catch (GitletException excp) {
+                assertEquals("HEAD has moved; another gitlet command may "
+                             + "have run.", excp.getMessage());
+            }
+            assertEquals(sha1("e"),
+                         new RefStore(head, heads, packed).head());
+            assertEquals(List.of("master"), List.of(heads.list()));
+            assertFalse(join(dir, "HEAD.lock").exists());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** pack() moves every loose branch into the packed-refs file, after
+     *  which loose branches again override packed ones; a locked loose
+     *  branch makes it fail and change nothing. */
+    @Test
+    public void refPackTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            File head = join(dir, "HEAD");
+            File heads = join(dir, "heads");
+            File packed = join(dir, "packed-refs");
+            RefStore refs = new RefStore(head, heads, packed);
+            refs.setCurrentBranch("master");
+            TreeMap<String, String> branches = new TreeMap<>();
+            for (String name : List.of("master", "other", "feature/x y")) {
+                refs.setBranch(name, sha1(name));
+                branches.put(name, sha1(name));
+            }
+            refs.pack();
+            assertEquals(0, heads.list().length);
+            assertEquals(branches, refs.branches());
+            RefStore reopened = new RefStore(head, heads, packed);
+            assertEquals(branches, reopened.branches());
+            assertEquals(sha1("master"), reopened.head());
+            reopened.setBranch("other", sha1("other"), sha1("moved"));
+            reopened.removeBranch("feature/x y");
+            branches.put("other", sha1("moved"));
+            branches.remove("feature/x y");
+            assertEquals(branches,
+                         new RefStore(head, heads, packed).branches());
+            String packedBefore = readContentsAsString(packed);
+            File lock = join(heads, "other.lock");
+            writeContents(lock, "");
+            try {
+                new RefStore(head, heads, packed).pack();
+                fail("packed a locked branch");
+            } catch (GitletException excp) {
+                assertEquals("Could not lock other; another gitlet "
+                             + "command may be running.",
+                             excp.getMessage());
+            }
+            lock.delete();
+            assertEquals(packedBefore, readContentsAsString(packed));
+            assertEquals(List.of("other"), List.of(heads.list()));
+            refs = new RefStore(head, heads, packed);
+            refs.pack();
+            assertEquals(branches, refs.branches());
+            assertEquals(0, heads.list().length);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Deletes FILE and, if it is a directory, everything in it. */
+    private static void delete(File file) throws IOException {
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(path -> path.toFile().delete());
+        }
+    }
+
 }
 
 